@@ -98,6 +98,12 @@ public class StateFlow {
      */
     public static final String CONTROLLER_SET_HINT = "javax.faces.flow.CONTROLLER_SET_HINT";
 
+    /**
+     * View root attribute holding the executor ids of the controllers in the
+     * view.
+     */
+    public static final String CONTROLLER_EXECUTORS_HINT = "javax.faces.flow.CONTROLLER_EXECUTORS_HINT";
+
     /**
      *
      */
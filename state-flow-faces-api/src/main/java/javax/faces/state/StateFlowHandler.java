@@ -206,6 +206,25 @@ public abstract class StateFlowHandler {
      */
     public abstract List<String> getControllerClientIds(FacesContext context);
 
+    /**
+     * Get the root executors of the controllers registered in the current
+     * view, in the order the controllers were built.
+     *
+     * @param context
+     * @return
+     */
+    public abstract List<SCXMLExecutor> getControllerExecutors(FacesContext context);
+
+    /**
+     * Check if any controller state chart of the current view can consume an
+     * event with the provided name, without visiting the component tree.
+     *
+     * @param context
+     * @param eventName
+     * @return
+     */
+    public abstract boolean canControllersConsumeEvent(FacesContext context, String eventName);
+
     /**
      *
      * @param context
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.faces.state.scxml.model.EnterableState;
+
+/**
+ * A set of {@link EnterableState}s of one state machine backed by a bit set
+ * indexed by their document order (see {@link EnterableState#getOrder()}).
+ * <p>
+ * Membership tests are a single bit lookup, iteration is always in document
+ * order and, once the set has grown to the size of the state machine, adding
+ * and removing states does not allocate. Clearing keeps the allocated
+ * capacity so the set can be reused between steps.</p>
+ * <p>
+ * Iterators tolerate removal of the current element from the set.</p>
+ */
+public class EnterableStateSet extends AbstractSet<EnterableState> implements Serializable {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The document orders of the states in this set.
+     */
+    private final BitSet bits = new BitSet();
+
+    /**
+     * The states of this set indexed by document order.
+     */
+    private EnterableState[] states = new EnterableState[16];
+
+    /**
+     * Number of states in this set.
+     */
+    private int size;
+
+    @Override
+    public boolean add(final EnterableState state) {
+        int order = state.getOrder();
+        if (order <= 0) {
+            throw new IllegalStateException("State " + state.getId() + " has no document order.");
+        }
+        if (bits.get(order)) {
+            return false;
+        }
+        if (order >= states.length) {
+            states = Arrays.copyOf(states, Math.max(order + 1, states.length * 2));
+        }
+        states[order] = state;
+        bits.set(order);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        int order = ((EnterableState) o).getOrder();
+        bits.clear(order);
+        states[order] = null;
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof EnterableState)) {
+            return false;
+        }
+        int order = ((EnterableState) o).getOrder();
+        return order > 0 && order < states.length && states[order] == o;
+    }
+
+    /**
+     * @param other the other set
+     * @return true if both sets have at least one state in common
+     */
+    public boolean intersects(final EnterableStateSet other) {
+        return bits.intersects(other.bits);
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                states[i] = null;
+            }
+            bits.clear();
+            size = 0;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return iterator over the states in document order
+     */
+    @Override
+    public Iterator<EnterableState> iterator() {
+        return new StateIterator(false);
+    }
+
+    /**
+     * @return iterator over the states in reverse document order
+     */
+    public Iterator<EnterableState> descendingIterator() {
+        return new StateIterator(true);
+    }
+
+    /**
+     * @return the states in reverse document order
+     */
+    public Iterable<EnterableState> reversed() {
+        return this::descendingIterator;
+    }
+
+    private final class StateIterator implements Iterator<EnterableState> {
+
+        private final boolean reversed;
+        private int next;
+        private int last = -1;
+
+        private StateIterator(boolean reversed) {
+            this.reversed = reversed;
+            this.next = reversed ? bits.previousSetBit(bits.length() - 1) : bits.nextSetBit(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public EnterableState next() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            EnterableState state = states[next];
+            next = reversed ? (next > 0 ? bits.previousSetBit(next - 1) : -1) : bits.nextSetBit(next + 1);
+            return state;
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (bits.get(last)) {
+                bits.clear(last);
+                states[last] = null;
+                size--;
+            }
+            last = -1;
+        }
+
+    }
+
+}
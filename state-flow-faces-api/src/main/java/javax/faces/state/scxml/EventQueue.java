@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A FIFO queue of events indexed by the event name.
+ * <p>
+ * Besides the queue order each pending event is kept in the list of the
+ * events of the same name, and every name is indexed by each of its token
+ * prefixes (<code>a</code>, <code>a.b</code> and <code>a.b.c</code> for the
+ * event <code>a.b.c</code>). Looking up the pending events matching an event
+ * descriptor takes constant time, removing them takes time proportional to
+ * the number of removed events.</p>
+ * <p>
+ * The queue is safe for concurrent use.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class EventQueue {
+
+    private Node head;
+
+    private Node tail;
+
+    private int size;
+
+    private final Map<String, ArrayDeque<Node>> byName = new HashMap<>();
+
+    private final Map<String, Set<String>> namesByPrefix = new HashMap<>();
+
+    /**
+     * Add the event at the end of the queue.
+     *
+     * @param evt the event
+     * @param coalesce if true the event is dropped when the last pending event
+     * of the same name is equal to it
+     * @return false if the event was coalesced
+     */
+    synchronized boolean add(TriggerEvent evt, boolean coalesce) {
+        String name = nameOf(evt);
+        ArrayDeque<Node> nodes = byName.get(name);
+        if (coalesce && nodes != null && nodes.peekLast().event.equals(evt)) {
+            return false;
+        }
+
+        Node node = new Node(name, evt);
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+            node.prev = tail;
+        }
+        tail = node;
+        size++;
+
+        if (nodes == null) {
+            nodes = new ArrayDeque<>(2);
+            byName.put(name, nodes);
+            index(name);
+        }
+        nodes.addLast(node);
+        return true;
+    }
+
+    /**
+     * @return the first event or <code>null</code> if the queue is empty
+     */
+    synchronized TriggerEvent poll() {
+        Node node = head;
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        ArrayDeque<Node> nodes = byName.get(node.name);
+        nodes.pollFirst();
+        if (nodes.isEmpty()) {
+            byName.remove(node.name);
+            unindex(node.name);
+        }
+        return node.event;
+    }
+
+    /**
+     * @param descriptor the event descriptor
+     * @return true if any pending event matches the descriptor
+     */
+    synchronized boolean contains(String descriptor) {
+        if (isAll(descriptor)) {
+            return size > 0;
+        }
+        return namesByPrefix.containsKey(normalize(descriptor));
+    }
+
+    /**
+     * Remove all pending events matching the descriptor.
+     *
+     * @param descriptor the event descriptor
+     * @return the number of removed events
+     */
+    synchronized int remove(String descriptor) {
+        if (isAll(descriptor)) {
+            int removed = size;
+            clear();
+            return removed;
+        }
+        Set<String> names = namesByPrefix.get(normalize(descriptor));
+        if (names == null) {
+            return 0;
+        }
+
+        int removed = 0;
+        for (String name : new ArrayList<>(names)) {
+            ArrayDeque<Node> nodes = byName.remove(name);
+            for (Node node : nodes) {
+                unlink(node);
+                removed++;
+            }
+            unindex(name);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all events.
+     */
+    synchronized void clear() {
+        head = null;
+        tail = null;
+        size = 0;
+        byName.clear();
+        namesByPrefix.clear();
+    }
+
+    /**
+     * @return the number of pending events
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no pending events
+     */
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        size--;
+    }
+
+    private void index(String name) {
+        int pos = name.indexOf('.');
+        while (pos > 0) {
+            namesByPrefix.computeIfAbsent(name.substring(0, pos), (key) -> new HashSet<>(2)).add(name);
+            pos = name.indexOf('.', pos + 1);
+        }
+        namesByPrefix.computeIfAbsent(name, (key) -> new HashSet<>(2)).add(name);
+    }
+
+    private void unindex(String name) {
+        int pos = name.indexOf('.');
+        while (pos > 0) {
+            unindex(name.substring(0, pos), name);
+            pos = name.indexOf('.', pos + 1);
+        }
+        unindex(name, name);
+    }
+
+    private void unindex(String prefix, String name) {
+        Set<String> names = namesByPrefix.get(prefix);
+        if (names != null && names.remove(name) && names.isEmpty()) {
+            namesByPrefix.remove(prefix);
+        }
+    }
+
+    private static String nameOf(TriggerEvent evt) {
+        return evt.getName() != null ? evt.getName() : "";
+    }
+
+    private static boolean isAll(String descriptor) {
+        return "*".equals(descriptor);
+    }
+
+    /**
+     * Strip the optional <code>.*</code> or <code>.</code> suffix of an event
+     * descriptor.
+     */
+    private static String normalize(String descriptor) {
+        if (descriptor.endsWith(".*")) {
+            return descriptor.substring(0, descriptor.length() - 2);
+        }
+        if (descriptor.endsWith(".")) {
+            return descriptor.substring(0, descriptor.length() - 1);
+        }
+        return descriptor;
+    }
+
+    private static final class Node {
+
+        private final String name;
+        private final TriggerEvent event;
+        private Node prev;
+        private Node next;
+
+        private Node(String name, TriggerEvent event) {
+            this.name = name;
+            this.event = event;
+        }
+
+    }
+
+}
@@ -16,10 +16,7 @@
  */
 package javax.faces.state.scxml;
 
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 import javax.faces.state.scxml.model.EnterableState;
 import javax.faces.state.scxml.model.Observable;
 import javax.faces.state.scxml.model.Transition;
@@ -32,26 +29,38 @@ import javax.faces.state.scxml.model.TransitionTarget;
  * The notification registry keeps track of all
  * <code>SCXMLListener</code>s attached and notifies relevant
  * listeners of the events that interest them.
+ * <p>
+ * The listeners are kept in an immutable table indexed by the dense
+ * {@link Observable#getObservableId()} of the state machine elements, an
+ * observable is identified by its id and class. Registering a listener
+ * replaces the table, notifying reads it without locking, and does nothing
+ * but one volatile read while no listener is registered.</p>
  *
  */
 public final class NotificationRegistry {
 
     /**
-     * The Map of all listeners keyed by {@link Observable#getObservableId()}.
+     * The largest observable id kept in the table, the observables with
+     * larger or negative ids are looked up in the overflow list.
      */
-    private final Map<String, Set<SCXMLListener>> regs;
+    private static final int MAX_INDEXED_ID = 4095;
+
+    private static final Slot[] NO_SLOTS = new Slot[0];
+
+    private static final SCXMLListener[] NO_LISTENERS = new SCXMLListener[0];
+
+    /**
+     * The listeners of each observable, <code>null</code> if no listener is
+     * registered.
+     */
+    private volatile Slot[] slots;
 
     /**
      * Constructor.
      */
     public NotificationRegistry() {
-        this.regs = new HashMap<>();
     }
 
-    private String getKeyOf(final Observable source) {
-        return source.getClass().getName() + "" + source.getObservableId();
-    }
-    
     /**
      * Register this SCXMLListener for this Observable.
      *
@@ -60,8 +69,16 @@ public final class NotificationRegistry {
      */
     synchronized void addListener(final Observable source, final SCXMLListener lst) {
         if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.computeIfAbsent(getKeyOf(source), k -> new LinkedHashSet<>());
-            entries.add(lst);
+            int id = source.getObservableId();
+            SCXMLListener[] listeners = listenersOf(slots, source.getClass(), id);
+            for (SCXMLListener listener : listeners) {
+                if (listener.equals(lst)) {
+                    return;
+                }
+            }
+            listeners = Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = lst;
+            slots = update(slots, source.getClass(), id, listeners);
         }
     }
 
@@ -73,11 +90,15 @@ public final class NotificationRegistry {
      */
     synchronized void removeListener(final Observable source, final SCXMLListener lst) {
         if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(getKeyOf(source));
-            if (entries != null) {
-                entries.remove(lst);
-                if (entries.isEmpty()) {
-                    regs.remove(getKeyOf(source));
+            int id = source.getObservableId();
+            SCXMLListener[] listeners = listenersOf(slots, source.getClass(), id);
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i].equals(lst)) {
+                    SCXMLListener[] remaining = new SCXMLListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, remaining, 0, i);
+                    System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                    slots = update(slots, source.getClass(), id, remaining);
+                    return;
                 }
             }
         }
@@ -90,13 +111,11 @@ public final class NotificationRegistry {
      * @param source The Observable
      * @param state The EnterableState that was entered
      */
-    public synchronized void fireOnEntry(final Observable source, final EnterableState state) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(getKeyOf(source));
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onEntry(state);
-                }
+    public void fireOnEntry(final Observable source, final EnterableState state) {
+        Slot[] table = slots;
+        if (table != null) {
+            for (SCXMLListener lst : listenersOf(table, source)) {
+                lst.onEntry(state);
             }
         }
     }
@@ -108,13 +127,11 @@ public final class NotificationRegistry {
      * @param source The Observable
      * @param state The EnterableState that was exited
      */
-    public synchronized void fireOnExit(final Observable source, final EnterableState state) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(getKeyOf(source));
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onExit(state);
-                }
+    public void fireOnExit(final Observable source, final EnterableState state) {
+        Slot[] table = slots;
+        if (table != null) {
+            for (SCXMLListener lst : listenersOf(table, source)) {
+                lst.onExit(state);
             }
         }
     }
@@ -126,13 +143,11 @@ public final class NotificationRegistry {
      * @param source The Observable
      * @param executor The SCXMLExecutor that was closed
      */
-    public synchronized void fireOnClose(final Observable source, final SCXMLExecutor executor) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(getKeyOf(source));
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onClose(executor);
-                }
+    public void fireOnClose(final Observable source, final SCXMLExecutor executor) {
+        Slot[] table = slots;
+        if (table != null) {
+            for (SCXMLListener lst : listenersOf(table, source)) {
+                lst.onClose(executor);
             }
         }
     }
@@ -146,17 +161,96 @@ public final class NotificationRegistry {
      * @param transition The Transition that was taken
      * @param event The event name triggering the transition
      */
-    public synchronized void fireOnTransition(final Observable source,
+    public void fireOnTransition(final Observable source,
             final TransitionTarget from, final TransitionTarget to,
             final Transition transition, final String event) {
-        if (source != null && source.getObservableId() != null) {
-            Set<SCXMLListener> entries = regs.get(getKeyOf(source));
-            if (entries != null) {
-                for (SCXMLListener lst : entries) {
-                    lst.onTransition(from, to, transition, event);
-                }
+        Slot[] table = slots;
+        if (table != null) {
+            for (SCXMLListener lst : listenersOf(table, source)) {
+                lst.onTransition(from, to, transition, event);
             }
         }
     }
-}
 
+    private static SCXMLListener[] listenersOf(final Slot[] table, final Observable source) {
+        if (source == null) {
+            return NO_LISTENERS;
+        }
+        Integer id = source.getObservableId();
+        if (id == null) {
+            return NO_LISTENERS;
+        }
+        return listenersOf(table, source.getClass(), id);
+    }
+
+    private static SCXMLListener[] listenersOf(final Slot[] table, final Class<?> type, final int id) {
+        if (table == null) {
+            return NO_LISTENERS;
+        }
+        int index = indexOf(id);
+        if (index >= table.length) {
+            return NO_LISTENERS;
+        }
+        for (Slot slot = table[index]; slot != null; slot = slot.next) {
+            if (slot.type == type && slot.id == id) {
+                return slot.listeners;
+            }
+        }
+        return NO_LISTENERS;
+    }
+
+    /**
+     * @return the copy of the table with the new listeners of the observable,
+     * <code>null</code> if no listener is left
+     */
+    private static Slot[] update(final Slot[] table, final Class<?> type, final int id,
+            final SCXMLListener[] listeners) {
+        int index = indexOf(id);
+        Slot[] result = table != null ? table : NO_SLOTS;
+        result = Arrays.copyOf(result, Math.max(result.length, index + 1));
+
+        Slot chain = null;
+        for (Slot slot = result[index]; slot != null; slot = slot.next) {
+            if (slot.type != type || slot.id != id) {
+                chain = new Slot(slot.type, slot.id, slot.listeners, chain);
+            }
+        }
+        if (listeners.length > 0) {
+            chain = new Slot(type, id, listeners, chain);
+        }
+        result[index] = chain;
+
+        int length = result.length;
+        while (length > 0 && result[length - 1] == null) {
+            length--;
+        }
+        return length == 0 ? null : Arrays.copyOf(result, length);
+    }
+
+    /**
+     * The observables with ids out of the table share its last index.
+     */
+    private static int indexOf(final int id) {
+        return id >= 0 && id < MAX_INDEXED_ID ? id : MAX_INDEXED_ID;
+    }
+
+    /**
+     * The listeners of one observable, chained to the other observables of the
+     * same index.
+     */
+    private static final class Slot {
+
+        private final Class<?> type;
+        private final int id;
+        private final SCXMLListener[] listeners;
+        private final Slot next;
+
+        private Slot(final Class<?> type, final int id, final SCXMLListener[] listeners, final Slot next) {
+            this.type = type;
+            this.id = id;
+            this.listeners = listeners;
+            this.next = next;
+        }
+
+    }
+}
@@ -27,10 +27,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import javax.faces.state.scxml.env.AbstractContext;
 import javax.faces.state.scxml.env.SimpleContext;
 import javax.faces.state.scxml.io.ContentParser;
+import javax.faces.state.scxml.io.DirtyStateHolder;
 import javax.faces.state.scxml.io.StateHolder;
+import static javax.faces.state.scxml.io.StateHolderSaver.clearDirtyState;
 import static javax.faces.state.scxml.io.StateHolderSaver.findElement;
+import static javax.faces.state.scxml.io.StateHolderSaver.isDirtyState;
 import static javax.faces.state.scxml.io.StateHolderSaver.restoreAttachedState;
 import static javax.faces.state.scxml.io.StateHolderSaver.restoreContext;
 import static javax.faces.state.scxml.io.StateHolderSaver.saveAttachedState;
@@ -49,7 +53,7 @@ import javax.faces.state.scxml.semantics.ErrorConstants;
  * The <code>SCInstance</code> performs book-keeping functions for a particular
  * execution of a state chart represented by a <code>SCXML</code> object.
  */
-public class SCInstance implements Serializable, StateHolder {
+public class SCInstance implements Serializable, DirtyStateHolder {
 
     /**
      * Serial version UID.
@@ -137,6 +141,12 @@ public class SCInstance implements Serializable, StateHolder {
      */
     private boolean singleContext;
 
+    /**
+     * True if the running status, the contexts or the histories changed since
+     * the last {@link #clearDirty()}.
+     */
+    private boolean dirty = true;
+
     /**
      * Constructor
      *
@@ -162,6 +172,7 @@ public class SCInstance implements Serializable, StateHolder {
      * instance
      */
     protected void initialize() throws ModelException {
+        dirty = true;
         running = false;
         if (stateMachine == null) {
             throw new ModelException(ERR_NO_STATE_MACHINE);
@@ -318,6 +329,7 @@ public class SCInstance implements Serializable, StateHolder {
             throw new ModelException("SCInstance: already initialized");
         }
         this.singleContext = singleContext;
+        this.dirty = true;
     }
 
     /**
@@ -352,6 +364,7 @@ public class SCInstance implements Serializable, StateHolder {
             }
             Object value = null;
             boolean setValue = false;
+            boolean shared = false;
             // prefer "src" over "expr" over "inline"
             if (datum.getSrc() != null) {
                 String resolvedSrc = datum.getSrc();
@@ -360,8 +373,9 @@ public class SCInstance implements Serializable, StateHolder {
                     URL url = pr != null ? pr.getResource(resolvedSrc) : new URL(resolvedSrc);
 
                     datum.setParsedValue(ContentParser.parseResource(url));
-                    value = evaluator.cloneData(datum.getParsedValue().getValue());
+                    value = datum.getParsedValue().getValue();
                     setValue = true;
+                    shared = true;
                 } catch (IOException e) {
                     if (internalIOProcessor != null) {
                         internalIOProcessor.addEvent(new EventBuilder(TriggerEvent.ERROR_EXECUTION, TriggerEvent.ERROR_EVENT).build());
@@ -379,13 +393,21 @@ public class SCInstance implements Serializable, StateHolder {
                     errorReporter.onError(ErrorConstants.EXPRESSION_ERROR, see.getMessage(), datum, "expr", see);
                 }
             } else if (datum.getParsedValue() != null) {
-                value = evaluator.cloneData(datum.getParsedValue().getValue());
+                value = datum.getParsedValue().getValue();
                 setValue = true;
+                shared = true;
             } else {
                 // initialize data value with null
                 setValue = true;
             }
-            if (setValue) {
+            if (shared) {
+                // the literal data of the chart is copied when first read
+                if (ctx instanceof AbstractContext) {
+                    ((AbstractContext) ctx).setLocalShared(datum.getId(), value, evaluator);
+                } else {
+                    ctx.setLocal(datum.getId(), evaluator.cloneData(value));
+                }
+            } else if (setValue) {
                 ctx.setLocal(datum.getId(), value);
             }
         }
@@ -423,6 +445,7 @@ public class SCInstance implements Serializable, StateHolder {
             throw new IllegalStateException("The state machine is in a Final state and cannot be set running again");
         }
         this.running = true;
+        this.dirty = true;
     }
 
     /**
@@ -430,6 +453,7 @@ public class SCInstance implements Serializable, StateHolder {
      */
     public void stop() {
         this.running = false;
+        this.dirty = true;
     }
 
     /**
@@ -451,6 +475,7 @@ public class SCInstance implements Serializable, StateHolder {
      */
     protected void setRootContext(final Context context) {
         this.rootContext = context;
+        this.dirty = true;
         // force initialization of rootContext
         getRootContext();
         if (systemContext != null) {
@@ -521,6 +546,7 @@ public class SCInstance implements Serializable, StateHolder {
                 cloneDatamodel(datamodel, context, evaluator, errorReporter);
             }
             contexts.put(state, context);
+            dirty = true;
         }
         return context;
     }
@@ -550,6 +576,7 @@ public class SCInstance implements Serializable, StateHolder {
     void setContext(final EnterableState state,
             final Context context) {
         contexts.put(state, context);
+        dirty = true;
     }
 
     /**
@@ -575,6 +602,7 @@ public class SCInstance implements Serializable, StateHolder {
     public void setLastConfiguration(final History history,
             final Set<EnterableState> lc) {
         histories.put(history, new HashSet<>(lc));
+        dirty = true;
     }
 
     /**
@@ -587,6 +615,7 @@ public class SCInstance implements Serializable, StateHolder {
      */
     public void resetConfiguration(final History history) {
         histories.remove(history);
+        dirty = true;
     }
 
     /**
@@ -642,6 +671,40 @@ public class SCInstance implements Serializable, StateHolder {
 
         restoreContextsState(context, values[7]);
         restoreHistoriesState(context, values[8]);
+        dirty = true;
+    }
+
+    /**
+     * @return true if the state configuration, the status, the histories or
+     * any of the contexts may have changed since the last
+     * {@link #clearDirty()}
+     */
+    @Override
+    public boolean isDirty() {
+        if (dirty || stateConfiguration.isDirty()) {
+            return true;
+        }
+        if (isDirtyState(rootContext) || isDirtyState(globalContext) || isDirtyState(systemContext)) {
+            return true;
+        }
+        for (Context ctx : contexts.values()) {
+            if (isDirtyState(ctx)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clearDirty() {
+        dirty = false;
+        stateConfiguration.clearDirty();
+        clearDirtyState(rootContext);
+        clearDirtyState(globalContext);
+        clearDirtyState(systemContext);
+        for (Context ctx : contexts.values()) {
+            clearDirtyState(ctx);
+        }
     }
 
     private Object saveContextsState(Context context) {
@@ -19,27 +19,29 @@ package javax.faces.state.scxml;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
 import java.util.logging.Logger;
 import javax.faces.state.scxml.env.SimpleDispatcher;
 import javax.faces.state.scxml.env.SimpleErrorReporter;
 import javax.faces.state.scxml.invoke.Invoker;
 import javax.faces.state.scxml.invoke.InvokerException;
+import javax.faces.state.scxml.io.DirtyStateHolder;
 import javax.faces.state.scxml.io.StateHolder;
+import static javax.faces.state.scxml.io.StateHolderSaver.clearDirtyState;
 import static javax.faces.state.scxml.io.StateHolderSaver.findElement;
+import static javax.faces.state.scxml.io.StateHolderSaver.isDirtyState;
 import static javax.faces.state.scxml.io.StateHolderSaver.restoreObjectState;
 import static javax.faces.state.scxml.io.StateHolderSaver.saveObjectState;
 import javax.faces.state.scxml.model.Invoke;
 import javax.faces.state.scxml.model.ModelException;
 import javax.faces.state.scxml.model.SCXML;
+import javax.faces.state.scxml.semantics.Step;
 
 /**
  * SCXMLExecutionContext provides all the services and internal data used during
  * the interpretation of an SCXML statemachine across micro and macro steps
  */
-public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
+public class SCXMLExecutionContext implements SCXMLIOProcessor, DirtyStateHolder {
 
     /**
      * Default and required supported SCXML Processor Invoker service URI
@@ -99,7 +101,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
     /**
      * The internal event queue
      */
-    private final Queue<TriggerEvent> internalEventQueue = new LinkedList<>();
+    private final EventQueue internalEventQueue = new EventQueue();
 
     /**
      * The map storing the unique invokeId for an Invoke with an active Invoker
@@ -128,6 +130,18 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      */
     private String sessionId;
 
+    /**
+     * The step reused by the semantics for every event processed, or
+     * <code>null</code> while it is in use.
+     */
+    private Step step = new Step(null);
+
+    /**
+     * True if the instance or the invokers changed since the last
+     * {@link #clearDirty()}.
+     */
+    private boolean dirty = true;
+
     /**
      * Constructor
      *
@@ -221,6 +235,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      */
     public void setCheckLegalConfiguration(boolean checkLegalConfiguration) {
         this.checkLegalConfiguration = checkLegalConfiguration;
+        this.dirty = true;
     }
 
     /**
@@ -301,6 +316,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      * machine instance failed to re-initialize
      */
     protected void setStateMachine(SCXML stateMachine) throws ModelException {
+        dirty = true;
         scInstance.setStateMachine(stateMachine);
         // synchronize possible derived evaluator
         this.evaluator = scInstance.getEvaluator();
@@ -376,6 +392,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      */
     protected void setEventdispatcher(EventDispatcher eventdispatcher) {
         this.eventdispatcher = eventdispatcher != null ? eventdispatcher : new SimpleDispatcher();
+        this.dirty = true;
     }
 
     /**
@@ -433,6 +450,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      * @param instance An previously detached SCInstance
      */
     protected void attachInstance(SCInstance instance) {
+        dirty = true;
         if (scInstance != null) {
             scInstance.detach();
         }
@@ -504,6 +522,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
         }
         invokeIds.put(invoke, invokeId);
         invokers.put(invokeId, invoker);
+        dirty = true;
         ioProcessors.put(SCXMLIOProcessor.EVENT_PROCESSOR_ALIAS_PREFIX + invoke.getId(), invoker.getChildIOProcessor());
         initializeIOProcessors();
     }
@@ -514,6 +533,7 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      * @param invoke The Invoke for the Invoker to remove
      */
     public void removeInvoker(final Invoke invoke) {
+        dirty = true;
         invokers.remove(invokeIds.remove(invoke));
         ioProcessors.remove(SCXMLIOProcessor.EVENT_PROCESSOR_ALIAS_PREFIX + invoke.getId());
         initializeIOProcessors();
@@ -551,7 +571,8 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
      */
     @Override
     public void addEvent(TriggerEvent event) {
-        internalEventQueue.add(event);
+        SCXML stateMachine = getStateMachine();
+        internalEventQueue.add(event, stateMachine != null && stateMachine.isCoalescedEvent(event));
     }
 
     /**
@@ -562,18 +583,14 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
     @Override
     public void removeEvent(String name) {
         if (name != null) {
-            internalEventQueue.removeIf((t) -> {
-                return t.getName().startsWith(name);
-            });
+            internalEventQueue.remove(name);
         }
     }
 
     @Override
     public boolean hasPendingEvents(String name) {
         if (name != null) {
-            return internalEventQueue.stream().anyMatch((t) -> {
-                return t.getName().startsWith(name);
-            });
+            return internalEventQueue.contains(name);
         } else {
             return false;
         }
@@ -594,6 +611,34 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
         return !internalEventQueue.isEmpty();
     }
 
+    /**
+     * Take the reusable step for processing an event. Nested event processing
+     * (an event triggered while another one is processed) gets a new step.
+     *
+     * @param event The event to process, or <code>null</code>
+     * @return the step reset for the provided event
+     */
+    public Step acquireStep(final TriggerEvent event) {
+        Step current = step;
+        if (current == null) {
+            return new Step(event);
+        }
+        step = null;
+        current.reset(event);
+        return current;
+    }
+
+    /**
+     * Return the step taken by {@link #acquireStep(TriggerEvent)} for reuse.
+     *
+     * @param released The step no longer in use
+     */
+    public void releaseStep(final Step released) {
+        released.reset(null);
+        released.getStatesToInvoke().clear();
+        step = released;
+    }
+
     /**
      *
      * @param context
@@ -639,9 +684,40 @@ public class SCXMLExecutionContext implements SCXMLIOProcessor, StateHolder {
         if (eventdispatcher instanceof StateHolder) {
             ((StateHolder) eventdispatcher).restoreState(context, values[3]);
         } else {
-            restoreObjectState(context, eventdispatcher, values[3]);
+            restoreObjectState(context, values[3], eventdispatcher);
         }
 
+        dirty = true;
+    }
+
+    /**
+     * An invoker or event dispatcher which does not track its changes as a
+     * {@link DirtyStateHolder} is always dirty.
+     *
+     * @return true if the state of this execution may have changed since the
+     * last {@link #clearDirty()}
+     */
+    @Override
+    public boolean isDirty() {
+        if (dirty || scInstance.isDirty() || isDirtyState(eventdispatcher)) {
+            return true;
+        }
+        for (Invoker invoker : invokers.values()) {
+            if (isDirtyState(invoker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clearDirty() {
+        dirty = false;
+        scInstance.clearDirty();
+        clearDirtyState(eventdispatcher);
+        for (Invoker invoker : invokers.values()) {
+            clearDirtyState(invoker);
+        }
     }
 
     private Object saveInvokersState(Context context) {
@@ -19,13 +19,16 @@ package javax.faces.state.scxml;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static javax.faces.state.scxml.SCXMLConstants.STATE_MACHINE_HINT;
-import javax.faces.state.scxml.io.StateHolder;
+import javax.faces.state.scxml.io.DirtyStateHolder;
 import javax.faces.state.scxml.model.EnterableState;
 import javax.faces.state.scxml.model.ModelException;
 import javax.faces.state.scxml.model.Observable;
@@ -49,7 +52,7 @@ import javax.faces.state.scxml.semantics.SCXMLSemanticsImpl;
  *
  * @see SCXMLSemantics
  */
-public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Observable {
+public final class SCXMLExecutor implements SCXMLIOProcessor, DirtyStateHolder, Observable {
 
     /**
      * The Logger for the SCXMLExecutor.
@@ -91,7 +94,18 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
     /**
      * The external event queue
      */
-    private final Queue<TriggerEvent> externalEventQueue = new ConcurrentLinkedQueue<>();
+    private final EventQueue externalEventQueue = new EventQueue();
+
+    /**
+     * The mailbox of the executor service running this executor, if any.
+     */
+    private volatile SCXMLExecutorService.Mailbox mailbox;
+
+    /**
+     * The lock held by the only thread which runs the state machine, the
+     * external event queue is the mailbox of the other threads.
+     */
+    private Lock executionLock;
 
     /**
      * Convenience constructor.
@@ -132,6 +146,7 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
         this.root = true;
         this.semantics = semantics != null ? semantics : new SCXMLSemanticsImpl();
         this.exctx = new SCXMLExecutionContext(this, expEvaluator, evtDisp, errRep);
+        this.executionLock = new ReentrantLock();
     }
 
     /**
@@ -173,6 +188,7 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
         this.parentSCXMLIOProcessor = new ParentSCXMLIOProcessor(parentSCXMLExecutor, invokeId);
         this.semantics = semantics != null ? semantics : parentSCXMLExecutor.semantics;
         this.exctx = new SCXMLExecutionContext(this, expEvaluator, evtDisp, errRep);
+        this.executionLock = parentSCXMLExecutor.executionLock;
 
         getSCInstance().setSingleContext(parentSCXMLExecutor.isSingleContext());
     }
@@ -194,6 +210,7 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
         this.semantics = parentSCXMLExecutor.semantics;
         this.exctx = new SCXMLExecutionContext(this, parentSCXMLExecutor.getEvaluator(),
                 parentSCXMLExecutor.getEventdispatcher().newInstance(), parentSCXMLExecutor.getErrorReporter());
+        this.executionLock = parentSCXMLExecutor.executionLock;
 
         getSCInstance().setSingleContext(parentSCXMLExecutor.isSingleContext());
         getSCInstance().setStateMachine(scxml);
@@ -235,13 +252,42 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
         return parentSCXMLIOProcessor;
     }
 
+    /**
+     * Get the lock held while the state machine is running. The executors
+     * created with a parent executor share the lock of the parent.
+     *
+     * @return the execution lock
+     */
+    public Lock getExecutionLock() {
+        return executionLock;
+    }
+
+    /**
+     * Set the lock held while the state machine is running, the executors of
+     * one flow can share one lock so that only one thread at a time runs any
+     * of them.
+     *
+     * @param executionLock the execution lock
+     */
+    public void setExecutionLock(Lock executionLock) {
+        if (executionLock == null) {
+            throw new IllegalArgumentException("The execution lock can not be null.");
+        }
+        this.executionLock = executionLock;
+    }
+
     /**
      * Get the current state machine instance status.
      *
      * @return The current Status
      */
-    public synchronized Status getStatus() {
-        return exctx.getScInstance().getCurrentStatus();
+    public Status getStatus() {
+        executionLock.lock();
+        try {
+            return exctx.getScInstance().getCurrentStatus();
+        } finally {
+            executionLock.unlock();
+        }
     }
 
     /**
@@ -269,7 +315,16 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
      * @see SCInstance#initialize()
      * @see SCXMLSemantics#isLegalConfiguration(java.util.Set, ErrorReporter)
      */
-    public synchronized void setConfiguration(Set<String> atomicStateIds) throws ModelException {
+    public void setConfiguration(Set<String> atomicStateIds) throws ModelException {
+        executionLock.lock();
+        try {
+            configure(atomicStateIds);
+        } finally {
+            executionLock.unlock();
+        }
+    }
+
+    private void configure(Set<String> atomicStateIds) throws ModelException {
         semantics.initialize(exctx, Collections.emptyMap());
         Set<EnterableState> states = new HashSet<>();
         for (String stateId : atomicStateIds) {
@@ -550,17 +605,22 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
      * @throws ModelException if the state machine instance failed to initialize
      */
     public void go(final Map<String, Object> data) throws ModelException {
-        // first stop the state machine (flag only, otherwise start may fail hereafter)
-        exctx.stop();
-        // clear any pending external events
-        externalEventQueue.clear();
-
-        // (re)initialize
-        semantics.initialize(exctx, data);
-
-        // begin
-        semantics.firstStep(exctx);
-        logState();
+        executionLock.lock();
+        try {
+            // first stop the state machine (flag only, otherwise start may fail hereafter)
+            exctx.stop();
+            // clear any pending external events
+            externalEventQueue.clear();
+
+            // (re)initialize
+            semantics.initialize(exctx, data);
+
+            // begin
+            semantics.firstStep(exctx);
+            logState();
+        } finally {
+            executionLock.unlock();
+        }
     }
 
     /**
@@ -574,32 +634,86 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
 
     /**
      *
-     * @return @throws ModelException
+     * @return the thread waiting until the state machine finishes
+     * @throws ModelException if the state machine instance failed to
+     * initialize
+     * @deprecated use {@link #runAsync()}
      */
+    @Deprecated
     public Thread run() throws ModelException {
         return run(Collections.emptyMap());
     }
 
     /**
+     * Start the state machine on the default {@link SCXMLExecutorService}.
      *
-     * @param data
-     * @return
-     * @throws ModelException
+     * @param data optional data to initialize/override data defined (only) in
+     * the global context of the state machine
+     * @return the thread waiting until the state machine finishes
+     * @throws ModelException if the state machine instance failed to
+     * initialize
+     * @deprecated use {@link #runAsync(java.util.Map)}, the events are
+     * processed on the pool of the service and the returned thread only waits
      */
+    @Deprecated
     public Thread run(final Map<String, Object> data) throws ModelException {
-        go(data);
+        CompletableFuture<Object> completion = runAsync(data);
         Thread t = new Thread(() -> {
             try {
-                while (exctx.isRunning()) {
-                    triggerEvents();
-                }
-            } catch (ModelException ignored) {
+                completion.join();
+            } catch (CompletionException | CancellationException ignored) {
             }
         });
         t.start();
         return t;
     }
 
+    /**
+     *
+     * @return the future completed with the &lt;donedata/&gt; of the state
+     * machine when it finishes
+     * @throws ModelException if the state machine instance failed to
+     * initialize
+     * @see #runAsync(java.util.Map)
+     */
+    public CompletableFuture<Object> runAsync() throws ModelException {
+        return runAsync(Collections.emptyMap());
+    }
+
+    /**
+     * Start the state machine on the default {@link SCXMLExecutorService},
+     * the events added later are processed on its pool until the state
+     * machine finishes.
+     *
+     * @param data optional data to initialize/override data defined (only) in
+     * the global context of the state machine
+     * @return the future completed with the &lt;donedata/&gt; of the state
+     * machine when it finishes
+     * @throws ModelException if the state machine instance failed to
+     * initialize
+     */
+    public CompletableFuture<Object> runAsync(final Map<String, Object> data) throws ModelException {
+        return SCXMLExecutorService.getDefault().start(this, data);
+    }
+
+    boolean attachMailbox(SCXMLExecutorService.Mailbox mailbox) {
+        synchronized (externalEventQueue) {
+            if (this.mailbox != null) {
+                return false;
+            }
+            this.mailbox = mailbox;
+            return true;
+        }
+    }
+
+    void detachMailbox(SCXMLExecutorService.Mailbox mailbox) {
+        synchronized (externalEventQueue) {
+            if (this.mailbox == mailbox) {
+                this.mailbox = null;
+            }
+        }
+    }
+
     /**
      * Add a new external event, which may be done concurrently, and even when
      * the current SCInstance is detached.
@@ -613,7 +727,14 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
     @Override
     public void addEvent(final TriggerEvent evt) {
         if (evt != null) {
-            externalEventQueue.add(evt);
+            SCXML stateMachine = exctx.getStateMachine();
+            if (!externalEventQueue.add(evt, stateMachine != null && stateMachine.isCoalescedEvent(evt))) {
+                return;
+            }
+            SCXMLExecutorService.Mailbox current = mailbox;
+            if (current != null) {
+                current.signal();
+            }
         }
     }
 
@@ -625,14 +746,12 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
      * methods is invoked.
      * </p>
      *
-     * @param name an external event name prefix
+     * @param name an external event descriptor, matched by its tokens
      */
     @Override
     public void removeEvent(String name) {
         if (name != null) {
-            externalEventQueue.removeIf((t) -> {
-                return t.getName().startsWith(name);
-            });
+            externalEventQueue.remove(name);
         }
     }
 
@@ -645,16 +764,14 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
     }
 
     /**
-     * @param name an external event name prefix
+     * @param name an external event descriptor, matched by its tokens
      * @return Returns true if there are pending external events to be
      * processed.
      */
     @Override
     public boolean hasPendingEvents(String name) {
         if (name != null) {
-            return externalEventQueue.stream().anyMatch((t) -> {
-                return t.getName().startsWith(name);
-            });
+            return externalEventQueue.contains(name);
         } else {
             return false;
         }
@@ -704,17 +821,72 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
     /**
      * Trigger all pending and incoming events, until there are no more pending
      * events
+     * <p>
+     * Only one thread at a time processes the events, a thread calling this
+     * method while another one is processing waits until it is done and then
+     * processes the events left in the queue.</p>
      *
      * @throws ModelException in case there is a fatal SCXML object model
      * problem.
      */
     public void triggerEvents() throws ModelException {
-        TriggerEvent evt;
-        while (exctx.isRunning() && (evt = externalEventQueue.poll()) != null) {
-            eventStep(evt);
+        triggerEvents(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Trigger at most the given number of pending events.
+     *
+     * @param maxEvents the maximum number of events to process
+     * @return true if there are pending events left
+     * @throws ModelException in case there is a fatal SCXML object model
+     * problem.
+     */
+    boolean triggerEvents(int maxEvents) throws ModelException {
+        executionLock.lock();
+        try {
+            TriggerEvent evt;
+            int count = 0;
+            while (count < maxEvents && exctx.isRunning() && (evt = externalEventQueue.poll()) != null) {
+                count++;
+                if (canConsumeEvent(evt)) {
+                    eventStep(evt);
+                }
+            }
+            return exctx.isRunning() && !externalEventQueue.isEmpty();
+        } finally {
+            executionLock.unlock();
         }
     }
 
+    /**
+     * Check if processing the event can have any effect: it cancels the state
+     * machine, it may be forwarded to an active invoker or a transition of the
+     * state machine may match it. Events which can not be consumed are dropped
+     * without a step.
+     *
+     * @param evt the external event
+     * @return false if the event can not be consumed by this executor
+     */
+    public boolean canConsumeEvent(final TriggerEvent evt) {
+        return evt.getType() == TriggerEvent.CANCEL_EVENT || canConsumeEvent(evt.getName());
+    }
+
+    /**
+     * Check if processing an event with the provided name can have any effect
+     * on this executor.
+     *
+     * @param eventName the event name
+     * @return false if the event can not be consumed by this executor
+     * @see #canConsumeEvent(TriggerEvent)
+     */
+    public boolean canConsumeEvent(final String eventName) {
+        if (!exctx.getInvokeIds().isEmpty()) {
+            return true;
+        }
+        SCXML stateMachine = exctx.getStateMachine();
+        return stateMachine == null || stateMachine.canMatchEvent(eventName);
+    }
+
     /**
      *
      * @param event
@@ -758,11 +930,16 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
     public Object saveState(Context context) {
         Object values[] = new Object[3];
 
-        context.setLocal(STATE_MACHINE_HINT, getSCInstance().getStateMachine());
+        executionLock.lock();
+        try {
+            context.setLocal(STATE_MACHINE_HINT, getSCInstance().getStateMachine());
 
-        values[0] = id;
-        values[1] = root;
-        values[2] = exctx.saveState(context);
+            values[0] = id;
+            values[1] = root;
+            values[2] = exctx.saveState(context);
+        } finally {
+            executionLock.unlock();
+        }
         return values;
     }
 
@@ -782,11 +959,25 @@ public final class SCXMLExecutor implements SCXMLIOProcessor, StateHolder, Obser
         Object[] values = (Object[]) state;
 
         id = (String) values[0];
-        root = (Boolean) values[0];
+        root = (Boolean) values[1];
         if (values[2] != null) {
-            exctx.restoreState(context, values[1]);
+            exctx.restoreState(context, values[2]);
         }
     }
+
+    /**
+     * @return true if the state of this executor may have changed since it was
+     * last saved or restored
+     */
+    @Override
+    public boolean isDirty() {
+        return exctx.isDirty();
+    }
+
+    @Override
+    public void clearDirty() {
+        exctx.clearDirty();
+    }
     
 
     /**
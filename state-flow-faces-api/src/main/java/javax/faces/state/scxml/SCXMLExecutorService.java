@@ -0,0 +1,343 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.faces.state.scxml.model.ModelException;
+
+/**
+ * Runs state machines outside of the request cycle on a shared thread pool.
+ * <p>
+ * A started executor does not own a thread. Adding an event to an idle
+ * executor schedules one drain task on the pool, the events added while the
+ * task is pending or running are processed by the same task. A task processes
+ * at most {@link #getBatchSize()} events and reschedules itself if more are
+ * left, so a busy executor can not starve the others. Many thousands of
+ * executors can be multiplexed over a pool sized by the number of
+ * processors.</p>
+ * <p>
+ * {@link #offer(SCXMLExecutor, TriggerEvent)} bounds the number of pending
+ * events of an executor, producers faster than the state machine are told to
+ * back off instead of filling the heap.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public class SCXMLExecutorService {
+
+    private static final Logger log = SCXMLLogger.SCXML.getLogger();
+
+    /**
+     * The default maximum number of pending events of one executor.
+     */
+    public static final int DEFAULT_MAX_PENDING_EVENTS = 1024;
+
+    /**
+     * The default number of events processed by one drain task.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static volatile SCXMLExecutorService defaultService;
+
+    private final Executor pool;
+    private final boolean ownPool;
+    private final int maxPendingEvents;
+    private final int batchSize;
+    private final Set<Mailbox> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+
+    /**
+     * Create the service with a work stealing pool of the size of the
+     * available processors.
+     */
+    public SCXMLExecutorService() {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), true,
+                DEFAULT_MAX_PENDING_EVENTS, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create the service on the given pool, the pool is not shut down by this
+     * service.
+     *
+     * @param pool the pool running the drain tasks
+     * @param maxPendingEvents the maximum number of pending events of one
+     * executor accepted by {@link #offer(SCXMLExecutor, TriggerEvent)}
+     * @param batchSize the maximum number of events processed by one drain
+     * task
+     */
+    public SCXMLExecutorService(Executor pool, int maxPendingEvents, int batchSize) {
+        this(pool, false, maxPendingEvents, batchSize);
+    }
+
+    private SCXMLExecutorService(Executor pool, boolean ownPool, int maxPendingEvents, int batchSize) {
+        if (pool == null) {
+            throw new NullPointerException();
+        }
+        if (maxPendingEvents <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("The pending events and batch size must be positive.");
+        }
+        this.pool = pool;
+        this.ownPool = ownPool;
+        this.maxPendingEvents = maxPendingEvents;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the service shared by {@link SCXMLExecutor#runAsync(java.util.Map)}
+     */
+    public static SCXMLExecutorService getDefault() {
+        SCXMLExecutorService service = defaultService;
+        if (service == null) {
+            synchronized (SCXMLExecutorService.class) {
+                service = defaultService;
+                if (service == null) {
+                    service = new SCXMLExecutorService();
+                    defaultService = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * @return the maximum number of pending events of one executor
+     */
+    public int getMaxPendingEvents() {
+        return maxPendingEvents;
+    }
+
+    /**
+     * @return the maximum number of events processed by one drain task
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the number of started executors which did not finish yet
+     */
+    public int getRunningCount() {
+        return running.size();
+    }
+
+    /**
+     * Start the state machine and process its events on the pool until it
+     * finishes.
+     *
+     * @param executor the executor to start
+     * @param data optional data to initialize/override data defined in the
+     * global context of the state machine
+     * @return the future completed with the &lt;donedata/&gt; of the state
+     * machine when it finishes
+     * @throws ModelException if the state machine instance failed to
+     * initialize
+     * @throws RejectedExecutionException if this service is shut down
+     * @throws IllegalStateException if the executor is already started by a
+     * service
+     */
+    public CompletableFuture<Object> start(SCXMLExecutor executor, Map<String, Object> data) throws ModelException {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor service is shut down.");
+        }
+        Mailbox mailbox = new Mailbox(executor);
+        // the drain tasks scheduled by the events added meanwhile wait until
+        // the state machine is started
+        Lock lock = executor.getExecutionLock();
+        lock.lock();
+        try {
+            if (!executor.attachMailbox(mailbox)) {
+                throw new IllegalStateException(String.format("Executor %s is already started.", executor.getId()));
+            }
+            running.add(mailbox);
+            executor.go(data);
+        } catch (ModelException | RuntimeException ex) {
+            finish(mailbox, ex);
+            throw ex;
+        } finally {
+            lock.unlock();
+        }
+
+        if (!executor.isRunning()) {
+            finish(mailbox, null);
+        } else if (executor.hasPendingEvents()) {
+            mailbox.signal();
+        }
+        return mailbox.completion;
+    }
+
+    /**
+     * Add the event if the executor has less than
+     * {@link #getMaxPendingEvents()} pending events.
+     *
+     * @param executor the started executor
+     * @param evt the external event
+     * @return false if the event is rejected and must be offered later
+     */
+    public boolean offer(SCXMLExecutor executor, TriggerEvent evt) {
+        if (executor.getPendingEvents() >= maxPendingEvents) {
+            return false;
+        }
+        executor.addEvent(evt);
+        return true;
+    }
+
+    /**
+     * Stop starting new executors, the running executors are processed until
+     * they finish.
+     */
+    public void shutdown() {
+        shutdown = true;
+        synchronized (running) {
+            running.notifyAll();
+        }
+        if (ownPool && running.isEmpty()) {
+            ((ExecutorService) pool).shutdown();
+        }
+    }
+
+    /**
+     * Stop starting new executors and detach the running executors, their
+     * futures are cancelled and their pending events are no more processed
+     * by this service.
+     */
+    public void shutdownNow() {
+        shutdown = true;
+        for (Mailbox mailbox : new ArrayList<>(running)) {
+            finish(mailbox, new CancellationException("The executor service is shut down."));
+        }
+        if (ownPool) {
+            ((ExecutorService) pool).shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if this service does not start new executors
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Wait until all executors finished after {@link #shutdown()}.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout
+     * @return true if all executors finished, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (running) {
+            while (!running.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(running, remaining);
+            }
+        }
+        return true;
+    }
+
+    private void finish(Mailbox mailbox, Throwable error) {
+        SCXMLExecutor executor = mailbox.executor;
+        executor.detachMailbox(mailbox);
+        if (running.remove(mailbox)) {
+            if (error != null) {
+                mailbox.completion.completeExceptionally(error);
+            } else {
+                mailbox.completion.complete(executor.getFinalDoneData());
+            }
+        }
+        if (running.isEmpty()) {
+            synchronized (running) {
+                running.notifyAll();
+            }
+            if (shutdown && ownPool) {
+                ((ExecutorService) pool).shutdown();
+            }
+        }
+    }
+
+    /**
+     * The mailbox of one started executor, runs as the drain task of the
+     * executor.
+     */
+    final class Mailbox implements Runnable {
+
+        private final SCXMLExecutor executor;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final CompletableFuture<Object> completion = new CompletableFuture<>();
+
+        private Mailbox(SCXMLExecutor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Schedule the drain task unless it is already pending.
+         */
+        void signal() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    pool.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                    finish(this, ex);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean more;
+            try {
+                more = executor.triggerEvents(batchSize);
+            } catch (ModelException | RuntimeException ex) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.log(Level.FINE, String.format("Executor %s failed.", executor.getId()), ex);
+                }
+                finish(this, ex);
+                return;
+            }
+
+            if (!executor.isRunning()) {
+                finish(this, null);
+                return;
+            }
+
+            scheduled.set(false);
+            if (more || executor.hasPendingEvents()) {
+                signal();
+            }
+        }
+
+    }
+
+}
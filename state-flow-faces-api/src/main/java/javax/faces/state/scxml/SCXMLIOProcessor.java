@@ -79,17 +79,20 @@ public interface SCXMLIOProcessor {
     void addEvent(TriggerEvent event);
     
     /**
-     * Remove an event into the SCXML processor queue
-     * <p>
-     * @param name the prefix name event to send
+     * Remove the events matching the event descriptor from the SCXML
+     * processor queue. The descriptor matches an event name equal to it or
+     * starting with it followed by a <code>.</code>.
+     *
+     * @param name the event descriptor
      */
     void removeEvent(String name);
     
     
     /**
-     * Test an event into the SCXML processor queue
-     * <p>
-     * @param name the prefix name event to send
+     * Test if an event matching the event descriptor is in the SCXML
+     * processor queue.
+     *
+     * @param name the event descriptor
      * @return Returns true if there are pending external events to be
      * processed.
      */
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import javax.faces.state.scxml.env.AbstractContext;
+import javax.faces.state.scxml.io.DirtyStateHolder;
 import javax.faces.state.scxml.io.StateHolder;
 import static javax.faces.state.scxml.io.StateHolderSaver.restoreAttachedState;
 import static javax.faces.state.scxml.io.StateHolderSaver.saveAttachedState;
@@ -35,7 +37,7 @@ import static javax.faces.state.scxml.io.StateHolderSaver.saveAttachedState;
  * @see
  * <a href="http://www.w3.org/TR/scxml/#SystemVariables">http://www.w3.org/TR/scxml/#SystemVariables</a>
  */
-public final class SCXMLSystemContext implements Context, StateHolder, Serializable {
+public final class SCXMLSystemContext implements Context, DirtyStateHolder, Serializable {
 
     /**
      * Serial version UID.
@@ -112,6 +114,12 @@ public final class SCXMLSystemContext implements Context, StateHolder, Serializa
      */
     private long nextSessionSequenceId;
 
+    /**
+     * True if the session sequence or the wrapped context was replaced since
+     * the last {@link #clearDirty()}.
+     */
+    private boolean dirty = true;
+
     /**
      * Initialize or replace systemContext
      *
@@ -128,6 +136,7 @@ public final class SCXMLSystemContext implements Context, StateHolder, Serializa
         }
         this.systemContext = systemContext;
         this.protectedVars = Collections.unmodifiableMap(systemContext.getVars());
+        this.dirty = true;
     }
 
     /**
@@ -148,6 +157,7 @@ public final class SCXMLSystemContext implements Context, StateHolder, Serializa
      * @return
      */
     public String generateSessionId() {
+        dirty = true;
         return getContext().get(SESSIONID_KEY) + "-" + nextSessionSequenceId++;
     }
 
@@ -272,6 +282,29 @@ public final class SCXMLSystemContext implements Context, StateHolder, Serializa
         nextSessionSequenceId = (long) values[1];
     }
 
+    /**
+     * The saved system variables are immutable values, so only setting or
+     * removing them in the wrapped context makes this context dirty.
+     *
+     * @return true if the state of this context may have changed
+     */
+    @Override
+    public boolean isDirty() {
+        if (dirty) {
+            return true;
+        }
+        return !(systemContext instanceof AbstractContext)
+                || ((AbstractContext) systemContext).isModified();
+    }
+
+    @Override
+    public void clearDirty() {
+        dirty = false;
+        if (systemContext instanceof AbstractContext) {
+            ((AbstractContext) systemContext).clearDirty();
+        }
+    }
+
     /**
      *
      * @param context
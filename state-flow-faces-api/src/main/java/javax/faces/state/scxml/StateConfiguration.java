@@ -18,14 +18,19 @@ package javax.faces.state.scxml;
 
 import java.io.Serializable;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 import static javax.faces.state.scxml.SCXMLConstants.STATE_MACHINE_HINT;
 import javax.faces.state.scxml.model.EnterableState;
 import javax.faces.state.scxml.model.SCXML;
 
 /**
- * The current active states of a state machine
+ * The current active states of a state machine.
+ * <p>
+ * Active states are kept in {@link EnterableStateSet}s indexed by their
+ * document order (see {@link EnterableState#getOrder()}), so membership tests
+ * are a single bit lookup and the state sets returned by
+ * {@link #getActiveStates()} and {@link #getStates()} iterate in document
+ * order without sorting.</p>
  */
 public class StateConfiguration implements Serializable {
     /**
@@ -36,20 +41,26 @@ public class StateConfiguration implements Serializable {
     /**
      * The states that are currently active.
      */
-    private final Set<EnterableState> activeStates = new HashSet<>();
+    private final EnterableStateSet activeStates = new EnterableStateSet();
     private final Set<EnterableState> activeStatesSet = Collections.unmodifiableSet(activeStates);
 
     /**
      * The atomic states that are currently active.
      */
-    private final Set<EnterableState> atomicStates = new HashSet<>();
+    private final EnterableStateSet atomicStates = new EnterableStateSet();
     private final Set<EnterableState> atomicStatesSet = Collections.unmodifiableSet(atomicStates);
 
+    /**
+     * True if a state was entered or exited since the last
+     * {@link #clearDirty()}.
+     */
+    private boolean dirty = true;
+
     /**
      * Get the active states
      *
      * @return active states including simple states and their
-     *         complex ancestors up to the root.
+     *         complex ancestors up to the root, iterated in document order.
      */
     public Set<EnterableState> getActiveStates() {
         return  activeStatesSet;
@@ -58,18 +69,53 @@ public class StateConfiguration implements Serializable {
     /**
      * Get the current atomic states (leaf only).
      *
-     * @return Returns the atomic states - simple (leaf) states only.
+     * @return Returns the atomic states - simple (leaf) states only, iterated
+     * in document order.
      */
     public Set<EnterableState> getStates() {
         return  atomicStatesSet;
     }
 
+    /**
+     * Get the active states in reverse document order.
+     * <p>
+     * The returned iterable tolerates exiting the current state while
+     * iterating.</p>
+     *
+     * @return active states in reverse document order
+     */
+    public Iterable<EnterableState> getActiveStatesReversed() {
+        return activeStates.reversed();
+    }
+
+    /**
+     * @param state the state to check
+     * @return true if the state is currently active
+     */
+    public boolean isActive(final EnterableState state) {
+        return activeStates.contains(state);
+    }
+
+    /**
+     * @param id the id of the state to check
+     * @return true if a state with provided id is currently active
+     */
+    public boolean isActive(final String id) {
+        for (EnterableState state : activeStates) {
+            if (id.equals(state.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Enter an active state
      * If the state is atomic also record it add it to the current states
      * @param state state to enter
      */
     public void enterState(final EnterableState state) {
+        dirty = true;
         if (!activeStates.add(state)) {
             throw new IllegalStateException("State "+state.getId()+" already added.");
         }
@@ -86,6 +132,7 @@ public class StateConfiguration implements Serializable {
      * @param state state to exit
      */
     public void exitState(final EnterableState state) {
+        dirty = true;
         if (!activeStates.remove(state)) {
             throw new IllegalStateException("State "+state.getId()+" not active.");
         }
@@ -96,9 +143,25 @@ public class StateConfiguration implements Serializable {
      * Clear the state configuration
      */
     public void clear() {
+        dirty = true;
         activeStates.clear();
         atomicStates.clear();
     }
+
+    /**
+     * @return true if a state was entered or exited since the last
+     * {@link #clearDirty()}
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks the current configuration as saved.
+     */
+    public void clearDirty() {
+        dirty = false;
+    }
     
     /**
      *
@@ -143,51 +206,37 @@ public class StateConfiguration implements Serializable {
     }
     
     private Object saveActiveStates(Context context) {
-        Object state = null;
-        if (null != activeStates && activeStates.size() > 0) {
-            Object[] attached = new Object[activeStates.size()];
-            int i = 0;
-            for (EnterableState fstate : activeStates) {
-                attached[i++] = fstate.getClientId();
-            }
-            state = attached;
-        }
-        return state;
+        return saveStates(activeStates);
     }
 
     private void restoreActiveStates(Context context, SCXML chart, Object state) {
-        activeStates.clear();
+        restoreStates(activeStates, chart, state);
+    }
 
-        if (null != state) {
-            Object[] values = (Object[]) state;
-            for (Object value : values) {
-                String ttid = (String) value;
-                Object found = chart.findElement(ttid);
-                if (found == null) {
-                    throw new IllegalStateException(String.format("Restored element %s not found.", ttid));
-                }
+    private Object saveAtomicStates(Context context) {
+        return saveStates(atomicStates);
+    }
 
-                EnterableState tt = (EnterableState) found;
-                activeStates.add(tt);
-            }
-        }
+    private void restoreAtomicStates(Context context, SCXML chart, Object state) {
+        restoreStates(atomicStates, chart, state);
     }
-    
-    private Object saveAtomicStates(Context context) {
+
+    private Object saveStates(EnterableStateSet states) {
         Object state = null;
-        if (null != atomicStates && atomicStates.size() > 0) {
-            Object[] attached = new Object[atomicStates.size()];
+        if (!states.isEmpty()) {
+            Object[] attached = new Object[states.size()];
             int i = 0;
-            for (EnterableState fstate : atomicStates) {
-                attached[i++] = fstate.getClientId();
+            for (EnterableState es : states) {
+                attached[i++] = es.getClientId();
             }
             state = attached;
         }
         return state;
     }
 
-    private void restoreAtomicStates(Context context, SCXML chart, Object state) {
-        atomicStates.clear();
+    private void restoreStates(EnterableStateSet states, SCXML chart, Object state) {
+        dirty = true;
+        states.clear();
 
         if (null != state) {
             Object[] values = (Object[]) state;
@@ -198,13 +247,9 @@ public class StateConfiguration implements Serializable {
                     throw new IllegalStateException(String.format("Restored element %s not found.", ttid));
                 }
 
-                EnterableState tt = (EnterableState) found;
-                atomicStates.add(tt);
+                states.add((EnterableState) found);
             }
         }
     }
-    
-    
-    
-    
+
 }
@@ -87,12 +87,7 @@ public class Status implements Serializable {
      * @return
      */
     public boolean isInState(final String state) {
-        for (EnterableState es : configuration.getActiveStates()) {
-            if (state.equals(es.getId())) {
-                return true;
-            }
-        }
-        return false;
+        return configuration.isActive(state);
     }
 }
 
@@ -44,6 +44,9 @@ public abstract class AbstractBaseEvaluator implements Evaluator, Serializable {
             if (data instanceof String || data instanceof Number || data instanceof Boolean) {
                 return data;
             }
+            if (data instanceof Copyable) {
+                return ((Copyable)data).copy(this);
+            }
             if (data instanceof Node) {
                 return ((Node)data).cloneNode(true);
             }
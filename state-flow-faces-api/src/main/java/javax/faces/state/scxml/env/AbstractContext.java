@@ -16,21 +16,41 @@
  */
 package javax.faces.state.scxml.env;
 
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import javax.faces.state.scxml.Context;
+import javax.faces.state.scxml.Evaluator;
 import javax.faces.state.scxml.SCXMLLogger;
 import javax.faces.state.scxml.SCXMLSystemContext;
-import javax.faces.state.scxml.io.StateHolder;
+import javax.faces.state.scxml.io.DirtyStateHolder;
+import static javax.faces.state.scxml.io.StateHolderSaver.isImmutableValue;
 import static javax.faces.state.scxml.io.StateHolderSaver.restoreAttachedState;
 import static javax.faces.state.scxml.io.StateHolderSaver.saveAttachedState;
 
 /**
  * Simple Context wrapping a map of variables.
+ * <p>
+ * Changes of the own variables map are tracked, see {@link #isDirty()}. A
+ * context created over a pre-populated initial variables map can not track
+ * its changes and is always dirty.</p>
+ * <p>
+ * Only setting and removing variables is tracked. A context holding a
+ * mutable value (anything but strings, boxed primitives, big numbers, enums
+ * and classes) is always dirty, and so always written with the flow state,
+ * since the value may be changed in place.</p>
  *
  */
-public class AbstractContext implements Context, StateHolder {
+public class AbstractContext implements Context, DirtyStateHolder {
 
     /**
      * Implementation independent log category.
@@ -50,6 +70,11 @@ public class AbstractContext implements Context, StateHolder {
      */
     protected SCXMLSystemContext systemContext;
 
+    /**
+     * True if the variables changed since the last {@link #clearDirty()}.
+     */
+    private boolean dirty = true;
+
     /**
      * Constructor.
      *
@@ -79,7 +104,7 @@ public class AbstractContext implements Context, StateHolder {
         this.systemContext = parent instanceof SCXMLSystemContext
                 ? (SCXMLSystemContext) parent : parent != null ? parent.getSystemContext() : null;
         if (initialVars == null) {
-            setVars(new HashMap<>());
+            setVars(new TrackedVars());
         } else {
             setVars(this.vars = initialVars);
         }
@@ -211,6 +236,26 @@ public class AbstractContext implements Context, StateHolder {
         getVars().put(name, value);
     }
 
+    /**
+     * Creates a local variable sharing the value with other contexts. The
+     * value is copied with {@link Evaluator#cloneData(Object)} the first time
+     * the variable is read, so a value which is never read is never copied
+     * and the shared value is never changed.
+     *
+     * @param name The variable name
+     * @param value The shared value, must not be changed by the caller
+     * @param evaluator The evaluator copying the value
+     */
+    public void setLocalShared(final String name, final Object value, final Evaluator evaluator) {
+        if (isImmutableValue(value)) {
+            setLocal(name, value);
+        } else if (getVars() instanceof TrackedVars) {
+            getVars().put(name, new SharedValue(value, evaluator));
+        } else {
+            setLocal(name, evaluator.cloneData(value));
+        }
+    }
+
     /**
      * Assigns a new value to an existing variable or creates a new one. The
      * method allows to shaddow a variable of the same name up the Context
@@ -281,7 +326,11 @@ public class AbstractContext implements Context, StateHolder {
         if (null != vars && vars.size() > 0) {
             Object[] attached = new Object[vars.size()];
             int i = 0;
-            for (Map.Entry<String, Object> entry : vars.entrySet()) {
+            // a shared value is saved as is, without replacing it by a copy
+            Iterator<Map.Entry<String, Object>> entries = vars instanceof TrackedVars
+                    ? ((TrackedVars) vars).entryIterator() : vars.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Object> entry = entries.next();
                 Object vstate = saveAttachedState(context, entry.getValue());
                 attached[i++] = new Object[]{entry.getKey(), vstate};
             }
@@ -308,4 +357,351 @@ public class AbstractContext implements Context, StateHolder {
         }
     }
 
+    /**
+     * @return true if a variable of this context was set or removed since the
+     * last {@link #clearDirty()}, changes of the variable values are not
+     * taken into account
+     */
+    public boolean isModified() {
+        return dirty || !(vars instanceof TrackedVars);
+    }
+
+    /**
+     * The context is dirty if it was modified or holds a mutable value, which
+     * could have been changed in place.
+     *
+     * @return true if the state of this context may have changed
+     */
+    @Override
+    public boolean isDirty() {
+        return isModified() || ((TrackedVars) vars).holdsMutableValue();
+    }
+
+    @Override
+    public void clearDirty() {
+        dirty = false;
+    }
+
+    /**
+     * The variables map marking the context dirty on each change.
+     */
+    private class TrackedVars extends HashMap<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private boolean holdsMutableValue() {
+            for (Object value : super.values()) {
+                if (!isImmutableValue(value) && !(value instanceof SharedValue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // a shared value is replaced by its copy when read
+        @Override
+        public Object get(Object key) {
+            Object value = super.get(key);
+            if (value instanceof SharedValue) {
+                value = ((SharedValue) value).copy();
+                dirty = true;
+                super.put((String) key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public Object getOrDefault(Object key, Object defaultValue) {
+            return super.containsKey(key) ? get(key) : defaultValue;
+        }
+
+        // serialized as a plain map, without the enclosing context, the
+        // shared values are written out as their copies
+        private Object writeReplace() {
+            HashMap<String, Object> result = new HashMap<>(size());
+            Iterator<Map.Entry<String, Object>> entries = entryIterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Object> entry = entries.next();
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            dirty = true;
+            return super.put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends Object> m) {
+            dirty = true;
+            super.putAll(m);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            dirty = true;
+            return super.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            dirty = true;
+            super.clear();
+        }
+
+        @Override
+        public Object putIfAbsent(String key, Object value) {
+            dirty = true;
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            dirty = true;
+            return super.remove(key, value);
+        }
+
+        @Override
+        public boolean replace(String key, Object oldValue, Object newValue) {
+            dirty = true;
+            return super.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public Object replace(String key, Object value) {
+            dirty = true;
+            return super.replace(key, value);
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super String, ? super Object, ? extends Object> function) {
+            dirty = true;
+            super.replaceAll(function);
+        }
+
+        @Override
+        public Object computeIfAbsent(String key, Function<? super String, ? extends Object> mappingFunction) {
+            dirty = true;
+            return super.computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+            dirty = true;
+            return super.computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public Object compute(String key, BiFunction<? super String, ? super Object, ? extends Object> remappingFunction) {
+            dirty = true;
+            return super.compute(key, remappingFunction);
+        }
+
+        @Override
+        public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ? extends Object> remappingFunction) {
+            dirty = true;
+            return super.merge(key, value, remappingFunction);
+        }
+
+        // the views mark the context dirty only when the map is changed
+        // through them, iterating over the variables does not
+        @Override
+        public Set<String> keySet() {
+            return new AbstractSet<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new TrackedIterator<>(Map.Entry::getKey);
+                }
+
+                @Override
+                public int size() {
+                    return TrackedVars.this.size();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return containsKey(o);
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (containsKey(o)) {
+                        TrackedVars.this.remove(o);
+                        return true;
+                    }
+                    return false;
+                }
+
+                @Override
+                public void clear() {
+                    TrackedVars.this.clear();
+                }
+            };
+        }
+
+        @Override
+        public Collection<Object> values() {
+            return new AbstractCollection<Object>() {
+                @Override
+                public Iterator<Object> iterator() {
+                    return new TrackedIterator<>(TrackedVars.this::getValue);
+                }
+
+                @Override
+                public int size() {
+                    return TrackedVars.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    TrackedVars.this.clear();
+                }
+            };
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new TrackedIterator<>(TrackedEntry::new);
+                }
+
+                @Override
+                public int size() {
+                    return TrackedVars.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    TrackedVars.this.clear();
+                }
+            };
+        }
+
+        private Iterator<Map.Entry<String, Object>> entryIterator() {
+            return super.entrySet().iterator();
+        }
+
+        // the views never expose a shared value, it is replaced by its copy
+        // like in get
+        private Object getValue(Map.Entry<String, Object> entry) {
+            Object value = entry.getValue();
+            if (value instanceof SharedValue) {
+                value = ((SharedValue) value).copy();
+                dirty = true;
+                entry.setValue(value);
+            }
+            return value;
+        }
+
+        /**
+         * Iterator over the map entries marking the context dirty on remove.
+         */
+        private final class TrackedIterator<E> implements Iterator<E> {
+
+            private final Iterator<Map.Entry<String, Object>> iterator = entryIterator();
+            private final Function<Map.Entry<String, Object>, E> mapper;
+
+            private TrackedIterator(Function<Map.Entry<String, Object>, E> mapper) {
+                this.mapper = mapper;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return mapper.apply(iterator.next());
+            }
+
+            @Override
+            public void remove() {
+                dirty = true;
+                iterator.remove();
+            }
+
+        }
+
+        /**
+         * Map entry marking the context dirty when its value is set.
+         */
+        private final class TrackedEntry implements Map.Entry<String, Object> {
+
+            private final Map.Entry<String, Object> entry;
+
+            private TrackedEntry(Map.Entry<String, Object> entry) {
+                this.entry = entry;
+            }
+
+            @Override
+            public String getKey() {
+                return entry.getKey();
+            }
+
+            @Override
+            public Object getValue() {
+                return TrackedVars.this.getValue(entry);
+            }
+
+            @Override
+            public Object setValue(Object value) {
+                dirty = true;
+                return entry.setValue(value);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+            }
+
+            @Override
+            public String toString() {
+                return getKey() + "=" + getValue();
+            }
+
+        }
+
+    }
+
+    /**
+     * A value shared by the contexts of many state machine instances, kept in
+     * the variables map until the variable is read.
+     */
+    private static final class SharedValue implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object value;
+        private final transient Evaluator evaluator;
+
+        private SharedValue(Object value, Evaluator evaluator) {
+            this.value = value;
+            this.evaluator = evaluator;
+        }
+
+        private Object copy() {
+            return evaluator.cloneData(value);
+        }
+
+        // serialized as the copy, the shared value is not written out
+        private Object writeReplace() {
+            return copy();
+        }
+
+    }
+
 }
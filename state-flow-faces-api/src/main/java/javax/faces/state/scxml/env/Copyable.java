@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml.env;
+
+import javax.faces.state.scxml.Evaluator;
+
+/**
+ * A datamodel value copying itself for {@link Evaluator#cloneData(Object)}.
+ * <p>
+ * A value backed by immutable structure, like a parsed JSON tree, shares the
+ * parts not modified since it was created with its copy, instead of being
+ * copied element by element.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public interface Copyable {
+
+    /**
+     * @param evaluator the evaluator copying the nested values not owned by
+     * this value
+     * @return a copy of this value, modifications of the copy are not visible
+     * in this value and vice versa
+     */
+    Object copy(Evaluator evaluator);
+
+}
@@ -18,6 +18,7 @@ package javax.faces.state.scxml.env;
 
 import java.io.Serializable;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -69,7 +70,11 @@ public final class EffectiveContextMap extends AbstractMap<String, Object> imple
     protected void mergeVars(Context leaf, Map<String, Object> map) {
         if (leaf != null) {
             mergeVars(leaf.getParent(), map);
-            map.putAll(leaf.getVars());
+            // read through the map, which replaces the shared values by copies
+            Map<String, Object> vars = leaf.getVars();
+            for (String key : new ArrayList<>(vars.keySet())) {
+                map.put(key, vars.get(key));
+            }
         }
     }
 
@@ -87,6 +92,14 @@ public final class EffectiveContextMap extends AbstractMap<String, Object> imple
         return old;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        return key != null && leaf.has(key.toString());
+    }
+
     /**
      * {@inheritDoc}
      */
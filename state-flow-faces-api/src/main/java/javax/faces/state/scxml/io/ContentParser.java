@@ -16,15 +16,22 @@
  */
 package javax.faces.state.scxml.io;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.ServiceLoader;
-import java.util.concurrent.ConcurrentHashMap;
 import javax.faces.state.scxml.model.ParsedValue;
 import javax.faces.state.scxml.model.TextValue;
 
@@ -34,36 +41,70 @@ import javax.faces.state.scxml.model.TextValue;
  */
 public abstract class ContentParser {
 
-    private static Map<String, ContentParser> providers;
+    private static final ParsedValueCache values = new ParsedValueCache(512);
 
-    private static Map<String, ContentParser> getProviders() {
-        if (providers == null) {
-            providers = new ConcurrentHashMap<>();
+    /**
+     * The content parsers registered by the {@link ServiceLoader}, loaded once
+     * when first used.
+     */
+    private static final class Registry {
+
+        private static final Map<String, ContentParser> byType;
+
+        private static final ContentParser[] parsers;
+
+        static {
+            Map<String, ContentParser> map = new HashMap<>();
             ServiceLoader<ContentParser> loader = ServiceLoader.load(ContentParser.class);
             Iterator<ContentParser> iterator = loader.iterator();
             while (iterator.hasNext()) {
                 ContentParser next = iterator.next();
-                providers.put(next.getType(), next);
+                map.put(next.getType().toLowerCase(Locale.ROOT), next);
             }
+            byType = Collections.unmodifiableMap(map);
+            parsers = map.values().toArray(new ContentParser[map.size()]);
         }
-        return providers;
+
     }
 
     /**
      * Returns a dedicated ContentParser instance for a specific content type.
+     * <p>
+     * The type is either the type of the parser, like <code>json</code>, or
+     * a MIME type resolved by its structured syntax suffix or subtype, like
+     * <code>application/ld+json</code> or <code>text/xml</code>.</p>
      *
      * @param type The type getString return a dedicated ContentParser for.
      * @return a ContentParser for the provided type.
      * @throws IOException If the type is not supported.
      */
     public static ContentParser get(String type) throws IOException {
-        ContentParser parser = getProviders().get(type);
+        ContentParser parser = type != null ? lookup(type) : null;
         if (parser == null) {
             throw new IOException(String.format("can not resolve content parser by type %s.", type));
         }
         return parser;
     }
 
+    private static ContentParser lookup(String type) {
+        String name = type.trim().toLowerCase(Locale.ROOT);
+        int sep = name.indexOf(';');
+        if (sep >= 0) {
+            name = name.substring(0, sep).trim();
+        }
+        ContentParser parser = Registry.byType.get(name);
+        if (parser == null) {
+            sep = name.lastIndexOf('+');
+            if (sep < 0) {
+                sep = name.indexOf('/');
+            }
+            if (sep >= 0) {
+                parser = Registry.byType.get(name.substring(sep + 1));
+            }
+        }
+        return parser;
+    }
+
     /**
      * Returns a dedicated ContentParser instance for a specific content type.
      *
@@ -72,14 +113,12 @@ public abstract class ContentParser {
      * @return a ContentParser for the provided type.
      */
     public static ContentParser resolveContent(String content) {
-        ContentParser parser = null;
-        for (Map.Entry<String, ContentParser> entry : getProviders().entrySet()) {
-            if (entry.getValue().isSupportedContent(content)) {
-                parser = entry.getValue();
-                break;
+        for (ContentParser parser : Registry.parsers) {
+            if (parser.isSupportedContent(content)) {
+                return parser;
             }
         }
-        return parser;
+        return null;
     }
 
     /**
@@ -187,33 +226,90 @@ public abstract class ContentParser {
      * @throws IOException In case of parsing exceptions
      */
     public static ParsedValue parseContent(final String content) throws IOException {
-        if (content != null) {
-            String src = trimContent(content);
-            ContentParser parser = resolveContent(content);
-            if (parser != null) {
-                return parser.parse(content);
-            } else {
-                return new TextValue(spaceNormalizeContent(src), false);
-            }
+        return parseContent(content, null);
+    }
+
+    /**
+     * Parse a getString into a ParsedValue content object by the
+     * ContentParser of the declared type, or following the rules of
+     * {@link #parseContent(String)} if no type is declared.
+     *
+     * @param content the content getString parse
+     * @param type the declared content type, may be null
+     * @return the parsed content object
+     * @throws IOException In case of parsing exceptions or if the declared
+     * type is not supported
+     */
+    public static ParsedValue parseContent(final String content, final String type) throws IOException {
+        if (content == null) {
+            return null;
         }
-        return null;
+        ContentParser parser = type != null ? get(type) : resolveContent(content);
+        if (parser != null) {
+            return parser.parse(content);
+        }
+        return new TextValue(spaceNormalizeContent(trimContent(content)), false);
     }
 
     /**
      * Load a resource (URL) as an UTF-8 encoded content getString getString be
      * parsed into a ParsedValue content object through
      * {@link #parseContent(String)}
+     * <p>
+     * The parsed value of a resource reporting its last modification time is
+     * cached until the resource is modified, all callers share the same value
+     * and must not modify it.</p>
      *
      * @param resourceURL Resource URL getString load content from
      * @return the parsed content object
      * @throws IOException In case of loading or parsing exceptions
      */
     public static ParsedValue parseResource(final URL resourceURL) throws IOException {
-        try (InputStream in = resourceURL.openStream()) {
-            int bufferSize = 1024;
-            char[] buffer = new char[bufferSize];
+        return parseResource(resourceURL, null);
+    }
+
+    /**
+     * Load a resource (URL) as an UTF-8 encoded content getString getString be
+     * parsed into a ParsedValue content object through
+     * {@link #parseContent(String, String)}
+     *
+     * @param resourceURL Resource URL getString load content from
+     * @param type the declared content type, may be null
+     * @return the parsed content object
+     * @throws IOException In case of loading or parsing exceptions
+     */
+    public static ParsedValue parseResource(final URL resourceURL, final String type) throws IOException {
+        Object url = type != null
+                ? resourceURL.toExternalForm() + ';' + type
+                : resourceURL.toExternalForm();
+
+        // the stream is opened only if the cached value is missing or stale
+        long cachedVersion = values.getVersion(url);
+        URLConnection connection = resourceURL.openConnection();
+        if (cachedVersion > 0 && connection instanceof HttpURLConnection) {
+            connection.setIfModifiedSince(cachedVersion);
+            if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                ParsedValue cached = values.get(url, cachedVersion);
+                if (cached != null) {
+                    return cached;
+                }
+                // dropped from the cache meanwhile, load it again
+                connection = resourceURL.openConnection();
+            }
+        }
+
+        long lastModified = getLastModified(resourceURL, connection);
+        if (lastModified > 0) {
+            ParsedValue cached = values.get(url, lastModified);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        try (InputStream in = connection.getInputStream()) {
+            char[] buffer = new char[1024];
             StringBuilder out = new StringBuilder();
-            Reader reader = new InputStreamReader(in, "UTF-8");
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
             for (;;) {
                 int rsz = reader.read(buffer, 0, buffer.length);
                 if (rsz < 0) {
@@ -221,11 +317,33 @@ public abstract class ContentParser {
                 }
                 out.append(buffer, 0, rsz);
             }
-            String content = out.toString();
-            return parseContent(content);
+            ParsedValue value = parseContent(out.toString(), type);
+            if (lastModified > 0 && value != null) {
+                values.put(url, lastModified, value);
+            }
+            return value;
         }
     }
 
+    private static long getLastModified(URL resourceURL, URLConnection connection) {
+        // the connection of a file opens the file to read its headers
+        if ("file".equals(resourceURL.getProtocol())) {
+            try {
+                return new File(resourceURL.toURI()).lastModified();
+            } catch (URISyntaxException | IllegalArgumentException ex) {
+                // not a plain file path, ask the connection
+            }
+        }
+        return connection.getLastModified();
+    }
+
+    /**
+     * Remove the cached parsed values of the loaded resources.
+     */
+    public static void clearResourceCache() {
+        values.clear();
+    }
+
     /**
      * @return The SCXML supported contant type this provider supports
      */
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml.io;
+
+/**
+ * A {@link StateHolder} which knows whether its state changed since the state
+ * was last saved or restored.
+ * <p>
+ * A holder which does not implement this interface has to be treated as
+ * always dirty.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public interface DirtyStateHolder extends StateHolder {
+
+    /**
+     * @return true if the state may have changed since the last call of
+     * {@link #clearDirty()}
+     */
+    boolean isDirty();
+
+    /**
+     * Marks the current state as saved.
+     */
+    void clearDirty();
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.faces.state.scxml.model.ParsedValue;
+
+/**
+ * The values parsed from the <code>src</code> resources of the state charts,
+ * keyed by the resource URL and valid as long as its version, the last
+ * modification time, does not change. A few resources are loaded by many
+ * charts, so the least recently used resource is dropped when the cache is
+ * full.
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class ParsedValueCache {
+
+    private final Map<Object, Entry> entries;
+
+    /**
+     * @param maxSize the maximum number of cached values
+     */
+    ParsedValueCache(int maxSize) {
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, ParsedValueCache.Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param key the key of the parsed source
+     * @param version the version of the source
+     * @return the parsed value or <code>null</code> if not cached or the
+     * source was modified
+     */
+    synchronized ParsedValue get(Object key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.version != version) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @param key the key of the parsed source
+     * @return the version of the cached value or <code>0</code> if not cached
+     */
+    synchronized long getVersion(Object key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.version : 0;
+    }
+
+    /**
+     * @param key the key of the parsed source
+     * @param version the version of the source
+     * @param value the parsed value
+     */
+    synchronized void put(Object key, long version, ParsedValue value) {
+        entries.put(key, new Entry(version, value));
+    }
+
+    /**
+     * Remove all parsed values.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        private final long version;
+        private final ParsedValue value;
+
+        private Entry(long version, ParsedValue value) {
+            this.version = version;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.faces.state.scxml.model.EnterableState;
+import javax.faces.state.scxml.model.SCXML;
+
+/**
+ * Compact binary form of the state trees built by the
+ * {@link javax.faces.state.scxml.StateHolder#saveState} methods.
+ * <p>
+ * The encoded form starts with a format version header. Strings (element
+ * client ids, variable names, class names) are written once and referenced
+ * by their index in an interned table afterwards. When the state machine of
+ * the tree is provided, client ids of its enterable states are written as
+ * their document order, and the header then carries the
+ * {@link SCXML#getStatesFingerprint() fingerprint} of the chart states. Such
+ * a state is only decoded against the same states, a state saved from a
+ * chart that has been edited since is rejected. Values not known to the codec
+ * are written with java serialization in a single object section at the
+ * end.</p>
+ * <p>
+ * Decoding returns a tree equal to the encoded one, so it can be passed to
+ * the <code>restoreState</code> methods unchanged.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class StateCodec {
+
+    /**
+     * The current format version.
+     */
+    public static final int VERSION = 2;
+
+    private static final int MAGIC_0 = 'S';
+    private static final int MAGIC_1 = 'F';
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int STRING = 5;
+    private static final int STRING_REF = 6;
+    private static final int STATE = 7;
+    private static final int ARRAY = 8;
+    private static final int SERIALIZABLE_ARRAY = 9;
+    private static final int LIST = 10;
+    private static final int SAVER = 11;
+    private static final int CLASS = 12;
+    private static final int BYTES = 13;
+    private static final int OBJECT = 14;
+
+    private StateCodec() {
+    }
+
+    /**
+     * Check if the data has been produced by this codec.
+     *
+     * @param data the data to check
+     * @return true if the data starts with the codec header
+     */
+    public static boolean isEncoded(Object data) {
+        if (!(data instanceof byte[])) {
+            return false;
+        }
+        byte[] bytes = (byte[]) data;
+        return bytes.length > 2 && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    /**
+     * Encode the state tree.
+     *
+     * @param chart the state machine the tree was saved from, or
+     * <code>null</code>
+     * @param state the state tree
+     * @return the encoded state
+     * @throws IOException if a value of the tree can not be serialized
+     */
+    public static byte[] encode(SCXML chart, Object state) throws IOException {
+        Encoder encoder = new Encoder(chart);
+        encoder.write(state);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoder.body.size() + 16);
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        writeVarint(out, VERSION);
+        writeVarlong(out, encoder.statesWritten ? chart.getStatesFingerprint() + 1 : 0);
+        writeVarint(out, encoder.body.size());
+        encoder.body.writeTo(out);
+        if (!encoder.objects.isEmpty()) {
+            try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(encoder.objects.toArray());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the state tree.
+     *
+     * @param chart the state machine the tree was saved from, or
+     * <code>null</code>
+     * @param data the encoded state
+     * @return the state tree
+     * @throws IOException if the data are not valid, have been encoded for
+     * a newer format version or from different states of the chart
+     */
+    public static Object decode(SCXML chart, byte[] data) throws IOException {
+        if (!isEncoded(data)) {
+            throw new IOException("Invalid encoded state header.");
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(data, 2, data.length - 2);
+        int version = readVarint(in);
+        if (version > VERSION) {
+            throw new IOException(String.format("Unsupported encoded state version %s.", version));
+        }
+        if (version >= 2) {
+            long fingerprint = readVarlong(in);
+            if (fingerprint != 0 && (chart == null || chart.getStatesFingerprint() + 1 != fingerprint)) {
+                throw new IOException(String.format(
+                        "Encoded state has been saved from different states of the state chart \"%s\".",
+                        chart != null ? chart.getName() : null));
+            }
+        }
+        int length = readVarint(in);
+        int offset = data.length - in.available();
+        if (length > in.available()) {
+            throw new EOFException();
+        }
+
+        Object[] objects = null;
+        if (offset + length < data.length) {
+            try (ObjectInputStream ois = new ClassLoaderObjectInputStream(
+                    new ByteArrayInputStream(data, offset + length, data.length - offset - length))) {
+                objects = (Object[]) ois.readObject();
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+
+        Decoder decoder = new Decoder(chart, new ByteArrayInputStream(data, offset, length), objects);
+        return decoder.read();
+    }
+
+    private static final class Encoder {
+
+        private final SCXML chart;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<Object> objects = new ArrayList<>();
+        private boolean statesWritten;
+
+        private Encoder(SCXML chart) {
+            this.chart = chart;
+        }
+
+        private void write(Object value) throws IOException {
+            if (value == null) {
+                body.write(NULL);
+            } else if (value instanceof Boolean) {
+                body.write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer) {
+                body.write(INT);
+                writeVarint(body, zigzag((Integer) value));
+            } else if (value instanceof Long) {
+                body.write(LONG);
+                writeVarlong(body, zigzag((Long) value));
+            } else if (value instanceof String) {
+                writeString((String) value, true);
+            } else if (value.getClass() == Object[].class) {
+                writeArray(ARRAY, (Object[]) value);
+            } else if (value.getClass() == Serializable[].class) {
+                writeArray(SERIALIZABLE_ARRAY, (Object[]) value);
+            } else if (value.getClass() == ArrayList.class) {
+                List<?> list = (List<?>) value;
+                body.write(LIST);
+                writeVarint(body, list.size());
+                for (Object item : list) {
+                    write(item);
+                }
+            } else if (value instanceof StateHolderSaver) {
+                StateHolderSaver saver = (StateHolderSaver) value;
+                body.write(SAVER);
+                write(saver.getClassName());
+                write(saver.getTtid());
+                write(saver.getSavedState());
+            } else if (value instanceof Class) {
+                body.write(CLASS);
+                writeString(((Class) value).getName(), false);
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                body.write(BYTES);
+                writeVarint(body, bytes.length);
+                body.write(bytes);
+            } else {
+                body.write(OBJECT);
+                writeVarint(body, objects.size());
+                objects.add(value);
+            }
+        }
+
+        private void writeArray(int tag, Object[] values) throws IOException {
+            body.write(tag);
+            writeVarint(body, values.length);
+            for (Object item : values) {
+                write(item);
+            }
+        }
+
+        private void writeString(String value, boolean element) {
+            if (element && chart != null && !value.isEmpty()) {
+                Object found = chart.findElement(value);
+                if (found instanceof EnterableState) {
+                    EnterableState state = (EnterableState) found;
+                    if (value.equals(state.getClientId()) && chart.findState(state.getOrder()) == state) {
+                        body.write(STATE);
+                        writeVarint(body, state.getOrder());
+                        statesWritten = true;
+                        return;
+                    }
+                }
+            }
+
+            Integer index = strings.get(value);
+            if (index != null) {
+                body.write(STRING_REF);
+                writeVarint(body, index);
+            } else {
+                strings.put(value, strings.size());
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                body.write(STRING);
+                writeVarint(body, bytes.length);
+                body.write(bytes, 0, bytes.length);
+            }
+        }
+
+    }
+
+    private static final class Decoder {
+
+        private final SCXML chart;
+        private final ByteArrayInputStream in;
+        private final Object[] objects;
+        private final List<String> strings = new ArrayList<>();
+
+        private Decoder(SCXML chart, ByteArrayInputStream in, Object[] objects) {
+            this.chart = chart;
+            this.in = in;
+            this.objects = objects;
+        }
+
+        private Object read() throws IOException {
+            int tag = in.read();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INT:
+                    return unzigzag(readVarint(in));
+                case LONG:
+                    return unzigzag(readVarlong(in));
+                case STRING:
+                case STRING_REF:
+                case STATE:
+                    return readString(tag);
+                case ARRAY: {
+                    Object[] values = new Object[readLength()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = read();
+                    }
+                    return values;
+                }
+                case SERIALIZABLE_ARRAY: {
+                    Serializable[] values = new Serializable[readLength()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = (Serializable) read();
+                    }
+                    return values;
+                }
+                case LIST: {
+                    int size = readLength();
+                    List<Object> values = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        values.add(read());
+                    }
+                    return values;
+                }
+                case SAVER: {
+                    String className = (String) read();
+                    String ttid = (String) read();
+                    Serializable savedState = (Serializable) read();
+                    return new StateHolderSaver(className, ttid, savedState);
+                }
+                case CLASS: {
+                    String name = readString(in.read());
+                    try {
+                        return StateHolderSaver.loadClass(name, this);
+                    } catch (ClassNotFoundException ex) {
+                        throw new IOException(ex.getMessage(), ex);
+                    }
+                }
+                case BYTES: {
+                    byte[] bytes = new byte[readLength()];
+                    readFully(bytes);
+                    return bytes;
+                }
+                case OBJECT: {
+                    int index = readVarint(in);
+                    if (objects == null || index >= objects.length) {
+                        throw new IOException(String.format("Encoded object %s not found.", index));
+                    }
+                    return objects[index];
+                }
+                case -1:
+                    throw new EOFException();
+                default:
+                    throw new IOException(String.format("Invalid encoded state tag %s.", tag));
+            }
+        }
+
+        private String readString(int tag) throws IOException {
+            switch (tag) {
+                case STRING: {
+                    byte[] bytes = new byte[readLength()];
+                    readFully(bytes);
+                    String value = new String(bytes, StandardCharsets.UTF_8);
+                    strings.add(value);
+                    return value;
+                }
+                case STRING_REF: {
+                    int index = readVarint(in);
+                    if (index >= strings.size()) {
+                        throw new IOException(String.format("Encoded string %s not found.", index));
+                    }
+                    return strings.get(index);
+                }
+                case STATE: {
+                    int order = readVarint(in);
+                    EnterableState state = chart != null ? chart.findState(order) : null;
+                    if (state == null) {
+                        throw new IOException(String.format("Restored element with document order %s not found.", order));
+                    }
+                    return state.getClientId();
+                }
+                default:
+                    throw new IOException(String.format("Invalid encoded string tag %s.", tag));
+            }
+        }
+
+        private int readLength() throws IOException {
+            int length = readVarint(in);
+            if (length > in.available()) {
+                throw new EOFException();
+            }
+            return length;
+        }
+
+        private void readFully(byte[] bytes) throws IOException {
+            if (bytes.length > 0 && in.read(bytes, 0, bytes.length) != bytes.length) {
+                throw new EOFException();
+            }
+        }
+
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private ClassLoaderObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return StateHolderSaver.loadClass(desc.getName(), this);
+            } catch (ClassNotFoundException ex) {
+                return super.resolveClass(desc);
+            }
+        }
+
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeVarlong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int readVarint(ByteArrayInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed encoded state varint.");
+    }
+
+    private static long readVarlong(ByteArrayInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed encoded state varint.");
+    }
+
+}
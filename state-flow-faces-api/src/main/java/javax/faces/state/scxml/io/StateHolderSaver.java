@@ -18,6 +18,8 @@ package javax.faces.state.scxml.io;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -74,6 +76,24 @@ public class StateHolderSaver implements Serializable {
         }
     }
 
+    StateHolderSaver(String className, String ttid, Serializable savedState) {
+        this.className = className;
+        this.ttid = ttid;
+        this.savedState = savedState;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getTtid() {
+        return ttid;
+    }
+
+    Serializable getSavedState() {
+        return savedState;
+    }
+
     /**
      *
      * @param context
@@ -465,6 +485,50 @@ public class StateHolderSaver implements Serializable {
         }
     }
 
+    /**
+     * @param holder the state holder, can be null
+     * @return false only if the holder is a {@link DirtyStateHolder} whose
+     * state did not change since it was last saved or restored
+     */
+    public static boolean isDirtyState(Object holder) {
+        if (holder == null) {
+            return false;
+        }
+        return !(holder instanceof DirtyStateHolder) || ((DirtyStateHolder) holder).isDirty();
+    }
+
+    /**
+     * @param holder the state holder, can be null
+     */
+    public static void clearDirtyState(Object holder) {
+        if (holder instanceof DirtyStateHolder) {
+            ((DirtyStateHolder) holder).clearDirty();
+        }
+    }
+
+    /**
+     * Values which can not change without being replaced in their context.
+     *
+     * @param value the value
+     * @return true if the value is null or an immutable value
+     */
+    public static boolean isImmutableValue(Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Double
+                || value instanceof Float
+                || value instanceof BigInteger
+                || value instanceof BigDecimal
+                || value instanceof Enum
+                || value instanceof Class;
+    }
+
     /**
      *
      * @param context
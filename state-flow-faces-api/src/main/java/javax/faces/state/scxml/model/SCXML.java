@@ -17,11 +17,18 @@
 package javax.faces.state.scxml.model;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 import javax.faces.state.scxml.PathResolver;
+import javax.faces.state.scxml.TriggerEvent;
 import static javax.faces.state.scxml.SCXMLConstants.META_ELEMENT_IDMAP;
 
 /**
@@ -136,6 +143,22 @@ public class SCXML extends SCComponent implements Serializable, Observable {
 
     private Map<String, Object> metadata;
 
+    /**
+     * The event descriptors of all transitions of this state machine,
+     * <code>null</code> if not known.
+     */
+    private Set<String> eventDescriptors;
+
+    /**
+     * The descriptors of the events coalesced in the event queues.
+     */
+    private Set<String> coalescedEvents;
+
+    /**
+     * The enterable states indexed by document order, built on first use.
+     */
+    private transient volatile StateIndex statesByOrder;
+
     /**
      * Constructor.
      */
@@ -481,6 +504,109 @@ public class SCXML extends SCComponent implements Serializable, Observable {
         this.datamodelName = datamodelName;
     }
 
+    /**
+     * Get the event descriptors of all transitions of this state machine. The
+     * all events descriptor is included as <code>*</code>.
+     *
+     * @return the event descriptors, or <code>null</code> if not known
+     */
+    public final Set<String> getEventDescriptors() {
+        return eventDescriptors;
+    }
+
+    /**
+     * Set the event descriptors of all transitions of this state machine.
+     *
+     * @param eventDescriptors the event descriptors
+     */
+    public final void setEventDescriptors(final Set<String> eventDescriptors) {
+        this.eventDescriptors = eventDescriptors == null ? null
+                : Collections.unmodifiableSet(new HashSet<>(eventDescriptors));
+    }
+
+    /**
+     * Check if any transition of this state machine can match the event.
+     *
+     * @param eventName the event name
+     * @return false only if no event descriptor of this state machine matches
+     * the event name
+     */
+    public boolean canMatchEvent(final String eventName) {
+        if (eventDescriptors == null || eventName == null) {
+            return true;
+        }
+        if (eventDescriptors.isEmpty()) {
+            return false;
+        }
+        return matches(eventDescriptors, eventName);
+    }
+
+    /**
+     * Get the descriptors of the events coalesced in the event queues, a
+     * matching event is dropped if an equal event of the same name is still
+     * pending.
+     *
+     * @return the coalesced event descriptors, or <code>null</code> if no
+     * event is coalesced
+     */
+    public final Set<String> getCoalescedEvents() {
+        return coalescedEvents;
+    }
+
+    /**
+     * Set the descriptors of the events coalesced in the event queues. The
+     * optional <code>.*</code> suffix of a descriptor is ignored.
+     *
+     * @param coalescedEvents the coalesced event descriptors
+     */
+    public final void setCoalescedEvents(final Set<String> coalescedEvents) {
+        if (coalescedEvents == null || coalescedEvents.isEmpty()) {
+            this.coalescedEvents = null;
+            return;
+        }
+        Set<String> descriptors = new HashSet<>();
+        for (String descriptor : coalescedEvents) {
+            if (descriptor.endsWith(".*")) {
+                descriptor = descriptor.substring(0, descriptor.length() - 2);
+            } else if (descriptor.endsWith(".")) {
+                descriptor = descriptor.substring(0, descriptor.length() - 1);
+            }
+            descriptors.add(descriptor);
+        }
+        this.coalescedEvents = Collections.unmodifiableSet(descriptors);
+    }
+
+    /**
+     * Check if the event may be coalesced with an equal pending event. Cancel
+     * and error events are never coalesced.
+     *
+     * @param event the event
+     * @return true if a coalesced event descriptor matches the event
+     */
+    public boolean isCoalescedEvent(final TriggerEvent event) {
+        if (coalescedEvents == null || event.getName() == null) {
+            return false;
+        }
+        if (event.getType() == TriggerEvent.CANCEL_EVENT || event.getType() == TriggerEvent.ERROR_EVENT) {
+            return false;
+        }
+        return matches(coalescedEvents, event.getName());
+    }
+
+    private static boolean matches(final Set<String> descriptors, final String eventName) {
+        if (descriptors.contains("*") || descriptors.contains(eventName)) {
+            return true;
+        }
+        int pos = eventName.indexOf('.');
+        while (pos > 0) {
+            if (descriptors.contains(eventName.substring(0, pos))) {
+                return true;
+            }
+            pos = eventName.indexOf('.', pos + 1);
+        }
+        return false;
+    }
+
     /**
      * Find the element by client id.
      *
@@ -497,5 +623,70 @@ public class SCXML extends SCComponent implements Serializable, Observable {
         Object result = idMap.get(expr);
         return (result);
     }
-    
+
+    /**
+     * Find the enterable state by its document order.
+     *
+     * @param order the document order
+     * @return Returns the found state or <code>null</code>.
+     */
+    public EnterableState findState(int order) {
+        EnterableState[] states = getStateIndex().states;
+        return order > 0 && order < states.length ? states[order] : null;
+    }
+
+    /**
+     * Return the fingerprint of the enterable states of this state machine,
+     * computed from their client ids and document order. It changes when a
+     * state is added, removed, renamed or moved.
+     *
+     * @return Returns the fingerprint of the states.
+     */
+    public long getStatesFingerprint() {
+        return getStateIndex().fingerprint;
+    }
+
+    private StateIndex getStateIndex() {
+        StateIndex index = statesByOrder;
+        if (index == null) {
+            EnterableState[] states = new EnterableState[0];
+            Map<?, ?> idMap = (Map<?, ?>) metadata.get(META_ELEMENT_IDMAP);
+            for (Object element : idMap.values()) {
+                if (element instanceof EnterableState) {
+                    EnterableState es = (EnterableState) element;
+                    if (es.getOrder() >= states.length) {
+                        states = Arrays.copyOf(states, es.getOrder() + 1);
+                    }
+                    states[es.getOrder()] = es;
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] != null) {
+                    crc.update(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                    crc.update(':');
+                    crc.update(String.valueOf(states[i].getClientId()).getBytes(StandardCharsets.UTF_8));
+                    crc.update(0);
+                }
+            }
+
+            index = new StateIndex(states, crc.getValue());
+            statesByOrder = index;
+        }
+        return index;
+    }
+
+    private static final class StateIndex {
+
+        private final EnterableState[] states;
+        private final long fingerprint;
+
+        private StateIndex(EnterableState[] states, long fingerprint) {
+            this.states = states;
+            this.fingerprint = fingerprint;
+        }
+
+    }
+
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.scxml.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Event descriptor index of the outgoing transitions of one
+ * {@link TransitionalState}.
+ * <p>
+ * The index is built once when the state machine model is updated and maps
+ * every event descriptor to the transitions declaring it. Candidate
+ * transitions for an event name are looked up by its dot separated prefixes
+ * instead of matching every transition of the state.</p>
+ * <p>
+ * Returned lists are always in document order and must not be modified.</p>
+ */
+public final class TransitionIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Event-less transitions, in document order.
+     */
+    private final List<Transition> eventless;
+
+    /**
+     * Transitions matching any event (*), in document order.
+     */
+    private final List<Transition> allEvents;
+
+    /**
+     * Transitions keyed by each of their event descriptors, in document order.
+     */
+    private final Map<String, List<Transition>> descriptors;
+
+    /**
+     * The lengths of the event descriptors, prefixes of other lengths are
+     * not looked up.
+     */
+    private final BitSet lengths = new BitSet();
+
+    /**
+     * Build index of provided transitions.
+     *
+     * @param transitions the transitions in document order
+     */
+    public TransitionIndex(final List<Transition> transitions) {
+        List<Transition> noEvents = new ArrayList<>();
+        List<Transition> anyEvents = new ArrayList<>();
+        Map<String, List<Transition>> byDescriptor = new HashMap<>();
+
+        for (Transition transition : transitions) {
+            if (transition.isNoEventsTransition()) {
+                noEvents.add(transition);
+            } else if (transition.isAllEventsTransition()) {
+                anyEvents.add(transition);
+            } else {
+                for (String event : transition.getEvents()) {
+                    List<Transition> list = byDescriptor.computeIfAbsent(event, k -> new ArrayList<>(1));
+                    if (!list.contains(transition)) {
+                        list.add(transition);
+                    }
+                }
+            }
+        }
+
+        this.eventless = freeze(noEvents);
+        this.allEvents = freeze(anyEvents);
+        if (byDescriptor.isEmpty()) {
+            this.descriptors = Collections.emptyMap();
+        } else {
+            Map<String, List<Transition>> frozen = new HashMap<>(byDescriptor.size() * 2);
+            for (Map.Entry<String, List<Transition>> entry : byDescriptor.entrySet()) {
+                frozen.put(entry.getKey(), freeze(entry.getValue()));
+                lengths.set(entry.getKey().length());
+            }
+            this.descriptors = frozen;
+        }
+    }
+
+    /**
+     * Get the transitions which event descriptors match the provided event
+     * name, or the event-less transitions when no event name is provided.
+     * <p>
+     * The guard conditions of the returned transitions are not evaluated.</p>
+     *
+     * @param eventName the event name or <code>null</code>
+     * @return the candidate transitions in document order, never
+     * <code>null</code>
+     */
+    public List<Transition> getCandidates(final String eventName) {
+        if (eventName == null) {
+            return eventless;
+        }
+        if (descriptors.isEmpty()) {
+            return allEvents;
+        }
+
+        List<Transition> result = allEvents;
+        boolean shared = true;
+
+        int pos = 0;
+        int length = eventName.length();
+        while (pos <= length) {
+            int next = eventName.indexOf('.', pos);
+            if (next < 0) {
+                next = length;
+            }
+            List<Transition> matched = !lengths.get(next) ? null
+                    : descriptors.get(next == length ? eventName : eventName.substring(0, next));
+            if (matched != null) {
+                if (result.isEmpty()) {
+                    result = matched;
+                } else {
+                    if (shared) {
+                        result = new ArrayList<>(result);
+                        shared = false;
+                    }
+                    merge(result, matched);
+                }
+            }
+            pos = next + 1;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return true if the indexed state has any transitions consuming events
+     */
+    public boolean hasEventTransitions() {
+        return !allEvents.isEmpty() || !descriptors.isEmpty();
+    }
+
+    /**
+     * @return true if the indexed state has transitions matching any event
+     */
+    public boolean hasAllEventsTransitions() {
+        return !allEvents.isEmpty();
+    }
+
+    /**
+     * @return the event descriptors of the indexed transitions, without the
+     * all events (*) descriptor
+     */
+    public Set<String> getDescriptors() {
+        return Collections.unmodifiableSet(descriptors.keySet());
+    }
+
+    private static void merge(final List<Transition> target, final List<Transition> source) {
+        for (Transition transition : source) {
+            int i = target.size();
+            while (i > 0 && target.get(i - 1).getOrder() > transition.getOrder()) {
+                i--;
+            }
+            if (i == 0 || target.get(i - 1) != transition) {
+                target.add(i, transition);
+            }
+        }
+    }
+
+    private static List<Transition> freeze(final List<Transition> list) {
+        if (list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (list.size() == 1) {
+            return Collections.singletonList(list.get(0));
+        }
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+}
@@ -30,6 +30,12 @@ public abstract class TransitionalState extends EnterableState {
      */
     private final List<Transition> transitions;
 
+    /**
+     * The event descriptor index of the outgoing transitions, built once the
+     * model is complete.
+     */
+    private TransitionIndex transitionIndex;
+
     /**
      * Optional property holding the data model for this state.
      */
@@ -149,6 +155,25 @@ public abstract class TransitionalState extends EnterableState {
         return transitions;
     }
 
+    /**
+     * Get the event descriptor index of the outgoing transitions.
+     *
+     * @return Returns the transition index or <code>null</code> if the index
+     * was not built
+     */
+    public final TransitionIndex getTransitionIndex() {
+        return transitionIndex;
+    }
+
+    /**
+     * Set the event descriptor index of the outgoing transitions.
+     *
+     * @param transitionIndex The transition index to set.
+     */
+    public final void setTransitionIndex(final TransitionIndex transitionIndex) {
+        this.transitionIndex = transitionIndex;
+    }
+
     /**
      * Get the data model for this transition target.
      *
@@ -16,7 +16,7 @@
  */
 package javax.faces.state.scxml.semantics;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -56,6 +56,7 @@ import javax.faces.state.scxml.model.Script;
 import javax.faces.state.scxml.model.SimpleTransition;
 import javax.faces.state.scxml.model.State;
 import javax.faces.state.scxml.model.Transition;
+import javax.faces.state.scxml.model.TransitionIndex;
 import javax.faces.state.scxml.model.TransitionTarget;
 import javax.faces.state.scxml.model.TransitionalState;
 import javax.faces.state.scxml.system.EventVariable;
@@ -125,14 +126,17 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         // execute global script if defined
         executeGlobalScript(exctx);
         // enter initial states
-        HashSet<TransitionalState> statesToInvoke = new HashSet<>();
-        Step step = new Step(null);
-        step.getTransitList().add(exctx.getStateMachine().getInitialTransition());
-        microStep(exctx, step, statesToInvoke);
-        // Execute Immediate Transitions
+        Step step = exctx.acquireStep(null);
+        try {
+            step.getTransitList().add(exctx.getStateMachine().getInitialTransition());
+            microStep(exctx, step, step.getStatesToInvoke());
+            // Execute Immediate Transitions
 
-        if (exctx.isRunning()) {
-            macroStep(exctx, statesToInvoke);
+            if (exctx.isRunning()) {
+                macroStep(exctx, step, step.getStatesToInvoke());
+            }
+        } finally {
+            exctx.releaseStep(step);
         }
 
         if (!exctx.isRunning()) {
@@ -184,14 +188,17 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         } else {
             setSystemEventVariable(exctx.getScInstance(), event, false);
             processInvokes(exctx, event);
-            Step step = new Step(event);
-            selectTransitions(exctx, step);
-            if (!step.getTransitList().isEmpty()) {
-                HashSet<TransitionalState> statesToInvoke = new HashSet<>();
-                microStep(exctx, step, statesToInvoke);
-                if (exctx.isRunning()) {
-                    macroStep(exctx, statesToInvoke);
+            Step step = exctx.acquireStep(event);
+            try {
+                selectTransitions(exctx, step);
+                if (!step.getTransitList().isEmpty()) {
+                    microStep(exctx, step, step.getStatesToInvoke());
+                    if (exctx.isRunning()) {
+                        macroStep(exctx, step, step.getStatesToInvoke());
+                    }
                 }
+            } finally {
+                exctx.releaseStep(step);
             }
         }
         if (!exctx.isRunning()) {
@@ -223,9 +230,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         if (exctx.isRunning()) {
             return;
         }
-        ArrayList<EnterableState> configuration = new ArrayList<>(exctx.getScInstance().getStateConfiguration().getActiveStates());
-        configuration.sort(DocumentOrder.reverseDocumentOrderComparator);
-        for (EnterableState es : configuration) {
+        for (EnterableState es : exctx.getScInstance().getStateConfiguration().getActiveStatesReversed()) {
             for (OnExit onexit : es.getOnExits()) {
                 executeContent(exctx, onexit);
             }
@@ -299,17 +304,21 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         // compute entrySet
         computeEntrySet(exctx, step);
 
-        // default result states to entrySet
-        Set<EnterableState> states = step.getEntrySet();
-        if (!step.getExitSet().isEmpty()) {
-            // calculate result states by taking current states, subtracting exitSet and adding entrySet
-            states = new HashSet<>(exctx.getScInstance().getStateConfiguration().getStates());
-            states.removeAll(step.getExitSet());
-            states.addAll(step.getEntrySet());
-        }
-        // validate the result states represent a legal configuration
-        if (exctx.isCheckLegalConfiguration() && !isLegalConfiguration(states, exctx.getErrorReporter())) {
-            throw new ModelException("Illegal state machine configuration!");
+        if (exctx.isCheckLegalConfiguration()) {
+            // default result states to entrySet
+            Set<EnterableState> states = step.getEntrySet();
+            if (!step.getExitSet().isEmpty()) {
+                // calculate result states by taking current states, subtracting exitSet and adding entrySet
+                states = step.resultStates;
+                states.clear();
+                states.addAll(exctx.getScInstance().getStateConfiguration().getStates());
+                states.removeAll(step.getExitSet());
+                states.addAll(step.getEntrySet());
+            }
+            // validate the result states represent a legal configuration
+            if (!isLegalConfiguration(states, exctx.getErrorReporter())) {
+                throw new ModelException("Illegal state machine configuration!");
+            }
         }
     }
 
@@ -329,10 +338,27 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public void macroStep(final SCXMLExecutionContext exctx, final Set<TransitionalState> statesToInvoke)
             throws ModelException {
+        macroStep(exctx, new Step(null), statesToInvoke);
+    }
+
+    /**
+     * Perform a macro step in the execution of a state machine reusing the
+     * provided step for every micro step.
+     *
+     * @param exctx The execution context for this step
+     * @param step The step to reuse
+     * @param statesToInvoke the set of activated states which invokes need to
+     * be invoked at the end of the current macro step
+     * @throws ModelException if a SCXML model error occurred during the
+     * execution.
+     * @see #macroStep(SCXMLExecutionContext, Set)
+     */
+    public void macroStep(final SCXMLExecutionContext exctx, final Step step,
+            final Set<TransitionalState> statesToInvoke) throws ModelException {
         do {
             boolean macroStepDone = false;
             do {
-                Step step = new Step(null);
+                step.reset(null);
                 selectTransitions(exctx, step);
                 if (step.getTransitList().isEmpty()) {
                     TriggerEvent event = exctx.nextInternalEvent();
@@ -343,7 +369,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                             exctx.getNotificationRegistry().fireOnClose(exctx.getStateMachine(), exctx.getSCXMLExecutor());
                         } else {
                             setSystemEventVariable(exctx.getScInstance(), event, true);
-                            step = new Step(event);
+                            step.reset(event);
                             selectTransitions(exctx, step);
                         }
                     }
@@ -475,13 +501,15 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      * @param step The step containing the list of transitions to be taken
      */
     public void computeEntrySet(final SCXMLExecutionContext exctx, final Step step) {
-        Set<History> historyTargets = new HashSet<>();
-        Set<EnterableState> entrySet = new HashSet<>();
+        List<History> historyTargets = step.historyTargets;
+        Set<EnterableState> entrySet = step.targetStates;
+        historyTargets.clear();
+        entrySet.clear();
         for (SimpleTransition st : step.getTransitList()) {
             for (TransitionTarget tt : st.getTargets()) {
                 if (tt instanceof EnterableState) {
                     entrySet.add((EnterableState) tt);
-                } else {
+                } else if (!historyTargets.contains((History) tt)) {
                     // History
                     historyTargets.add((History) tt);
                 }
@@ -493,6 +521,8 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         for (History h : historyTargets) {
             addDescendantStatesToEnter(exctx, step, h);
         }
+        entrySet.clear();
+        historyTargets.clear();
         for (SimpleTransition st : step.getTransitList()) {
             TransitionalState ancestor = st.getTransitionDomain();
             for (TransitionTarget tt : st.getTargets()) {
@@ -609,12 +639,14 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public void selectTransitions(final SCXMLExecutionContext exctx, final Step step) throws ModelException {
         step.getTransitList().clear();
-        ArrayList<Transition> enabledTransitions = new ArrayList<>();
+        List<Transition> enabledTransitions = step.enabledTransitions;
+        enabledTransitions.clear();
 
-        ArrayList<EnterableState> configuration = new ArrayList<>(exctx.getScInstance().getStateConfiguration().getActiveStates());
-        configuration.sort(DocumentOrder.documentOrderComparator);
+        // active states are iterated in document order
+        Set<EnterableState> configuration = exctx.getScInstance().getStateConfiguration().getActiveStates();
 
-        HashSet<EnterableState> visited = new HashSet<>();
+        BitSet visited = step.visited;
+        visited.clear();
 
         String eventName = step.getEvent() != null ? step.getEvent().getName() : null;
         for (EnterableState es : configuration) {
@@ -635,17 +667,37 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
                 int ancestorIndex = state.getNumberOfAncestors() - 1;
                 boolean transitionMatched = false;
                 do {
-                    for (Transition transition : current.getTransitionsList()) {
-                        if (transitionMatched = matchTransition(exctx, transition, eventName)) {
-                            enabledTransitions.add(transition);
-                            break;
+                    TransitionIndex index = current.getTransitionIndex();
+                    if (index != null) {
+                        for (Transition transition : index.getCandidates(eventName)) {
+                            if (transitionMatched = matchCondition(exctx, transition)) {
+                                enabledTransitions.add(transition);
+                                break;
+                            }
+                        }
+                    } else {
+                        for (Transition transition : current.getTransitionsList()) {
+                            if (transitionMatched = matchTransition(exctx, transition, eventName)) {
+                                enabledTransitions.add(transition);
+                                break;
+                            }
                         }
                     }
                     current = (!transitionMatched && ancestorIndex > -1) ? state.getAncestor(ancestorIndex--) : null;
-                } while (!transitionMatched && current != null && visited.add(current));
+                } while (!transitionMatched && current != null && markVisited(visited, current));
             }
         }
         removeConflictingTransitions(exctx, step, enabledTransitions);
+        enabledTransitions.clear();
+    }
+
+    private static boolean markVisited(final BitSet visited, final EnterableState state) {
+        int order = state.getOrder();
+        if (visited.get(order)) {
+            return false;
+        }
+        visited.set(order);
+        return true;
     }
 
     /**
@@ -658,38 +710,33 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
      */
     public void removeConflictingTransitions(final SCXMLExecutionContext exctx, final Step step,
             final List<Transition> enabledTransitions) {
+        if (enabledTransitions.size() < 2) {
+            // nothing can conflict
+            step.getTransitList().addAll(enabledTransitions);
+            return;
+        }
+
         LinkedHashSet<Transition> filteredTransitions = new LinkedHashSet<>();
         LinkedHashSet<Transition> preemptedTransitions = new LinkedHashSet<>();
-        Map<Transition, Set<EnterableState>> exitSets = new HashMap<>();
+        Map<Transition, BitSet> exitSets = new HashMap<>();
 
         Set<EnterableState> configuration = exctx.getScInstance().getStateConfiguration().getActiveStates();
         enabledTransitions.sort(DocumentOrder.documentOrderComparator);
 
         for (Transition t1 : enabledTransitions) {
             boolean t1Preempted = false;
-            Set<EnterableState> t1ExitSet = exitSets.get(t1);
+            BitSet t1ExitSet = exitSets.get(t1);
             for (Transition t2 : filteredTransitions) {
                 if (t1ExitSet == null) {
-                    t1ExitSet = new HashSet<>();
-                    computeExitSet(t1, t1ExitSet, configuration);
+                    t1ExitSet = computeExitSet(t1, configuration);
                     exitSets.put(t1, t1ExitSet);
                 }
-                Set<EnterableState> t2ExitSet = exitSets.get(t2);
+                BitSet t2ExitSet = exitSets.get(t2);
                 if (t2ExitSet == null) {
-                    t2ExitSet = new HashSet<>();
-                    computeExitSet(t2, t2ExitSet, configuration);
+                    t2ExitSet = computeExitSet(t2, configuration);
                     exitSets.put(t2, t2ExitSet);
                 }
-                Set<EnterableState> smaller = t1ExitSet.size() < t2ExitSet.size() ? t1ExitSet : t2ExitSet;
-                Set<EnterableState> larger = smaller == t1ExitSet ? t2ExitSet : t1ExitSet;
-                boolean hasIntersection = false;
-                for (EnterableState s1 : smaller) {
-                    hasIntersection = larger.contains(s1);
-                    if (hasIntersection) {
-                        break;
-                    }
-                }
-                if (hasIntersection) {
+                if (t1ExitSet.intersects(t2ExitSet)) {
                     if (t1.getParent().isDescendantOf(t2.getParent())) {
                         preemptedTransitions.add(t2);
                     } else {
@@ -711,6 +758,27 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         step.getTransitList().addAll(filteredTransitions);
     }
 
+    /**
+     * Compute the document orders of the states to exit for one specific
+     * transition.
+     *
+     * @param transition The transition to compute the states to exit from
+     * @param activeStates The current active states of the state machine
+     * @return the document orders of the states to exit
+     */
+    private BitSet computeExitSet(final SimpleTransition transition, final Set<EnterableState> activeStates) {
+        BitSet exitSet = new BitSet();
+        if (!transition.getTargets().isEmpty()) {
+            TransitionalState transitionDomain = transition.getTransitionDomain();
+            for (EnterableState state : activeStates) {
+                if (transitionDomain == null || state.isDescendantOf(transitionDomain)) {
+                    exitSet.set(state.getOrder());
+                }
+            }
+        }
+        return exitSet;
+    }
+
     /**
      * @param exctx The execution context for this step
      * @param transition The transition
@@ -740,6 +808,16 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         } else if (!transition.isNoEventsTransition()) {
             return false;
         }
+        return matchCondition(exctx, transition);
+    }
+
+    /**
+     * @param exctx The execution context for this step
+     * @param transition The transition
+     * @return Returns true if the (optional) condition guard of the transition
+     * evaluates to true.
+     */
+    public boolean matchCondition(final SCXMLExecutionContext exctx, final Transition transition) {
         if (transition.getCond() != null) {
             Boolean result = Boolean.FALSE;
             Context context = exctx.getScInstance().getContext(transition.getParent());
@@ -927,10 +1005,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         if (step.getExitSet().isEmpty()) {
             return;
         }
-        ArrayList<EnterableState> exitList = new ArrayList<>(step.getExitSet());
-        exitList.sort(DocumentOrder.reverseDocumentOrderComparator);
-
-        for (EnterableState es : exitList) {
+        for (EnterableState es : step.getExitSet().reversed()) {
 
             if (es instanceof TransitionalState && ((TransitionalState) es).hasHistory()) {
                 // persist the new history configurations for this state to exit
@@ -1045,9 +1120,7 @@ public class SCXMLSemanticsImpl implements SCXMLSemantics {
         if (step.getEntrySet().isEmpty()) {
             return;
         }
-        ArrayList<EnterableState> entryList = new ArrayList<>(step.getEntrySet());
-        entryList.sort(DocumentOrder.documentOrderComparator);
-        for (EnterableState es : entryList) {
+        for (EnterableState es : step.getEntrySet()) {
             exctx.getScInstance().getStateConfiguration().enterState(es);
             // ensure state context creation and datamodel cloned
             exctx.getScInstance().getContext(es);
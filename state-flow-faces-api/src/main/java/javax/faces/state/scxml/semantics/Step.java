@@ -17,19 +17,26 @@
 package javax.faces.state.scxml.semantics;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.faces.state.scxml.EnterableStateSet;
 import javax.faces.state.scxml.TriggerEvent;
 import javax.faces.state.scxml.model.EnterableState;
 import javax.faces.state.scxml.model.History;
 import javax.faces.state.scxml.model.SimpleTransition;
+import javax.faces.state.scxml.model.Transition;
 import javax.faces.state.scxml.model.TransitionalState;
 
 /**
  * A logical unit of progression in the execution of a SCXML model.
+ * <p>
+ * A step can be {@link #reset(TriggerEvent) reset} and reused for the next
+ * event, its collections keep their capacity between uses. The state sets are
+ * iterated in document order.</p>
  *
  */
 public class Step {
@@ -37,22 +44,22 @@ public class Step {
     /**
      * The event in this step.
      */
-    private final TriggerEvent event;
+    private TriggerEvent event;
 
     /**
      * The set of states that were exited during this step.
      */
-    private final Set<EnterableState> exitSet;
+    private final EnterableStateSet exitSet;
 
     /**
      * The set of states that were entered during this step.
      */
-    private final Set<EnterableState> entrySet;
+    private final EnterableStateSet entrySet;
 
     /**
      * The set of states that were entered during this step by default
      */
-    private final Set<EnterableState> defaultEntrySet;
+    private final EnterableStateSet defaultEntrySet;
 
     /**
      * The map of default History transitions to be executed as result of entering states in this step.
@@ -69,17 +76,50 @@ public class Step {
      */
     private final List<SimpleTransition> transitList;
 
+    /**
+     * The set of activated states which invokes need to be invoked at the end
+     * of the current macro step.
+     */
+    private final Set<TransitionalState> statesToInvoke;
+
+    /**
+     * Working buffers of the semantics, valid during a single call only.
+     */
+    final ArrayList<Transition> enabledTransitions = new ArrayList<>();
+    final BitSet visited = new BitSet();
+    final EnterableStateSet targetStates = new EnterableStateSet();
+    final ArrayList<History> historyTargets = new ArrayList<>();
+    final EnterableStateSet resultStates = new EnterableStateSet();
+
     /**
      * @param event The event received in this unit of progression
      */
     public Step(TriggerEvent event) {
         this.event = event;
-        this.exitSet = new HashSet<>();
-        this.entrySet = new HashSet<>();
-        this.defaultEntrySet = new HashSet<>();
+        this.exitSet = new EnterableStateSet();
+        this.entrySet = new EnterableStateSet();
+        this.defaultEntrySet = new EnterableStateSet();
         this.defaultHistoryTransitions = new HashMap<>();
         this.newHistoryConfigurations = new HashMap<>();
         this.transitList = new ArrayList<>();
+        this.statesToInvoke = new HashSet<>();
+    }
+
+    /**
+     * Prepare this step for processing another event. The states to invoke
+     * are retained as they are collected over the whole macro step.
+     *
+     * @param event The event received in this unit of progression
+     */
+    public void reset(TriggerEvent event) {
+        this.event = event;
+        transitList.clear();
+        clearIntermediateState();
+        enabledTransitions.clear();
+        visited.clear();
+        targetStates.clear();
+        historyTargets.clear();
+        resultStates.clear();
     }
 
     /**
@@ -96,14 +136,14 @@ public class Step {
     /**
      * @return Returns the entrySet.
      */
-    public Set<EnterableState> getEntrySet() {
+    public EnterableStateSet getEntrySet() {
         return entrySet;
     }
 
     /**
      * @return Returns the defaultEntrySet.
      */
-    public Set<EnterableState> getDefaultEntrySet() {
+    public EnterableStateSet getDefaultEntrySet() {
         return defaultEntrySet;
     }
 
@@ -124,7 +164,7 @@ public class Step {
     /**
      * @return Returns the exitSet.
      */
-    public Set<EnterableState> getExitSet() {
+    public EnterableStateSet getExitSet() {
         return exitSet;
     }
 
@@ -141,5 +181,13 @@ public class Step {
     public List<SimpleTransition> getTransitList() {
         return transitList;
     }
+
+    /**
+     * @return Returns the set of activated states which invokes need to be
+     * invoked at the end of the current macro step.
+     */
+    public Set<TransitionalState> getStatesToInvoke() {
+        return statesToInvoke;
+    }
 }
 
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.store;
+
+import java.io.IOException;
+
+/**
+ * External storage of the encoded flow states.
+ * <p>
+ * When a store is configured the http session holds only the key of each
+ * flow, the encoded flow state is loaded from the store at the first access
+ * in a request and written back when it changed. Keys are opaque strings
+ * generated by the state flow handler, a store must be safe for concurrent
+ * use.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public abstract class FlowStateStore {
+
+    /**
+     * @param key the flow key
+     * @return the encoded flow state or <code>null</code> if the store does
+     * not hold the flow
+     * @throws IOException if the state can not be read
+     */
+    public abstract byte[] load(String key) throws IOException;
+
+    /**
+     * Store or replace the encoded flow state.
+     *
+     * @param key the flow key
+     * @param state the encoded flow state
+     * @throws IOException if the state can not be written
+     */
+    public abstract void store(String key, byte[] state) throws IOException;
+
+    /**
+     * Remove the flow state, unknown keys are ignored.
+     *
+     * @param key the flow key
+     * @throws IOException if the state can not be removed
+     */
+    public abstract void remove(String key) throws IOException;
+
+    /**
+     * Release the resources held by this store, called when the application
+     * is stopped.
+     *
+     * @throws IOException if the store can not be closed
+     */
+    public void release() throws IOException {
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javax.faces.state.store;
+
+import java.io.IOException;
+
+/**
+ * The transport to a remote key value store holding the encoded flow states.
+ * <p>
+ * The <code>remote</code> flow state store uses the first connector
+ * registered with the {@link java.util.ServiceLoader}, so a distributed
+ * cache client or an in-process fake can be plugged in without changing the
+ * state flow handler. A connector must be safe for concurrent use.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public interface FlowStateStoreConnector {
+
+    /**
+     * @param key the flow key
+     * @return the stored value or <code>null</code>
+     * @throws IOException if the remote store can not be read
+     */
+    byte[] get(String key) throws IOException;
+
+    /**
+     * @param key the flow key
+     * @param value the value to store
+     * @throws IOException if the remote store can not be written
+     */
+    void put(String key, byte[] value) throws IOException;
+
+    /**
+     * @param key the flow key
+     * @throws IOException if the remote store can not be written
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Close the connection to the remote store.
+     *
+     * @throws IOException if the connection can not be closed
+     */
+    void close() throws IOException;
+
+}
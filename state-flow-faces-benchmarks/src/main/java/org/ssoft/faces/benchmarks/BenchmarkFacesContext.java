@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.el.ELContext;
+import javax.el.ExpressionFactory;
+import javax.el.StandardELContext;
+import javax.faces.application.Application;
+import javax.faces.application.ApplicationWrapper;
+import javax.faces.application.ProjectStage;
+import javax.faces.context.FacesContext;
+import javax.faces.context.FacesContextWrapper;
+
+/**
+ * Minimal thread bound {@link FacesContext} outside of a servlet container.
+ * <p>
+ * Only the attributes map, the EL context and the expression factory of the
+ * application are backed, this is all the evaluator and the state machine
+ * engine need. Any other call fails.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class BenchmarkFacesContext extends FacesContextWrapper {
+
+    private final Map<Object, Object> attributes = new HashMap<>();
+    private final ExpressionFactory expressionFactory;
+    private final ELContext elContext;
+    private final Application application;
+
+    private BenchmarkFacesContext() {
+        super(null);
+        this.expressionFactory = ExpressionFactory.newInstance();
+        this.elContext = new StandardELContext(expressionFactory);
+        this.application = new ApplicationWrapper(null) {
+            @Override
+            public ExpressionFactory getExpressionFactory() {
+                return expressionFactory;
+            }
+
+            @Override
+            public ProjectStage getProjectStage() {
+                return ProjectStage.Production;
+            }
+        };
+    }
+
+    /**
+     * Create the context and bind it to the current thread.
+     *
+     * @return the bound context
+     */
+    public static BenchmarkFacesContext install() {
+        BenchmarkFacesContext context = new BenchmarkFacesContext();
+        setCurrentInstance(context);
+        return context;
+    }
+
+    @Override
+    public Map<Object, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ELContext getELContext() {
+        return elContext;
+    }
+
+    @Override
+    public Application getApplication() {
+        return application;
+    }
+
+    @Override
+    public void release() {
+        attributes.clear();
+        setCurrentInstance(null);
+    }
+
+}
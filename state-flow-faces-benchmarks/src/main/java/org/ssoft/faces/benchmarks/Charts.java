@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import javax.faces.state.scxml.SCXMLExecutor;
+import javax.faces.state.scxml.env.SimpleDispatcher;
+import javax.faces.state.scxml.env.SimpleErrorReporter;
+import javax.faces.state.scxml.model.History;
+import javax.faces.state.scxml.model.ModelException;
+import javax.faces.state.scxml.model.Parallel;
+import javax.faces.state.scxml.model.SCXML;
+import javax.faces.state.scxml.model.SimpleTransition;
+import javax.faces.state.scxml.model.State;
+import javax.faces.state.scxml.model.Transition;
+import javax.faces.state.scxml.model.TransitionTarget;
+import org.ssoft.faces.impl.state.evaluator.StateFlowEvaluator;
+import org.ssoft.faces.impl.state.tag.ModelUpdater;
+
+/**
+ * Synthetic state charts, built the way the facelets tag handlers build them.
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class Charts {
+
+    /**
+     * Shape of a synthetic state chart.
+     */
+    public enum Shape {
+
+        /**
+         * Compound states nested <code>size</code> levels deep. The innermost
+         * leaves toggle on <code>next</code>, <code>reset</code> re-enters
+         * the whole hierarchy.
+         */
+        DEEP("next", "reset") {
+            @Override
+            SCXML build(int size) {
+                SCXML scxml = new SCXML();
+                scxml.setInitial("deep_1");
+                State top = nest(scxml, "deep", size);
+                top.addTransition(transition("reset", "deep_1"));
+                scxml.addChild(top);
+                return scxml;
+            }
+        },
+        /**
+         * Parallel state with <code>size</code> regions, each toggling
+         * between two leaves on <code>next</code>, <code>reset</code>
+         * re-enters all regions.
+         */
+        WIDE("next", "reset") {
+            @Override
+            SCXML build(int size) {
+                SCXML scxml = new SCXML();
+                scxml.setInitial("wide");
+                Parallel parallel = new Parallel();
+                target(scxml, parallel, "wide");
+                for (int i = 1; i <= size; i++) {
+                    State region = new State();
+                    target(scxml, region, "region_" + i);
+                    leaves(scxml, region, "region_" + i);
+                    parallel.addChild(region);
+                }
+                parallel.addTransition(transition("reset", "wide"));
+                scxml.addChild(parallel);
+                return scxml;
+            }
+        },
+        /**
+         * Deep history over <code>size</code> nested levels. The chart leaves
+         * the hierarchy on <code>leave</code> and restores it from history on
+         * <code>back</code>.
+         */
+        HISTORY("next", "leave", "back") {
+            @Override
+            SCXML build(int size) {
+                SCXML scxml = new SCXML();
+                scxml.setInitial("main");
+
+                State main = new State();
+                target(scxml, main, "main");
+                main.addChild(nest(scxml, "level", size));
+
+                History history = new History();
+                history.setType("deep");
+                target(scxml, history, "main_history");
+                main.addHistory(history);
+                SimpleTransition restore = new SimpleTransition();
+                restore.setNext("level_1");
+                history.setTransition(restore);
+                main.addTransition(transition("leave", "away"));
+                scxml.addChild(main);
+
+                State away = new State();
+                target(scxml, away, "away");
+                away.addTransition(transition("back", "main_history"));
+                scxml.addChild(away);
+                return scxml;
+            }
+        };
+
+        private final String[] events;
+
+        Shape(String... events) {
+            this.events = events;
+        }
+
+        /**
+         * @return the events cycling the chart through its configurations
+         */
+        public String[] getEvents() {
+            return events.clone();
+        }
+
+        abstract SCXML build(int size);
+
+    }
+
+    private Charts() {
+    }
+
+    /**
+     * Build a state chart model ready for execution.
+     *
+     * @param shape the chart shape
+     * @param size the depth or width of the chart
+     * @return the updated state chart model
+     * @throws IOException if the model is flawed
+     */
+    public static SCXML create(Shape shape, int size) throws IOException {
+        SCXML scxml = shape.build(size);
+        scxml.setName(shape.name().toLowerCase());
+        new ModelUpdater(Collections.emptyMap()).updateSCXML(scxml);
+        return scxml;
+    }
+
+    /**
+     * Create a root executor configured as the flow handler does in the
+     * production project stage. A faces context must be bound to the current
+     * thread.
+     *
+     * @param id the executor id
+     * @param scxml the state chart model
+     * @return the not yet started executor
+     * @throws ModelException if the executor can not be created
+     */
+    public static SCXMLExecutor newExecutor(String id, SCXML scxml) throws ModelException {
+        StateFlowEvaluator evaluator = new StateFlowEvaluator();
+        SCXMLExecutor executor = new SCXMLExecutor(id, evaluator, new SimpleDispatcher(), new SimpleErrorReporter());
+        executor.setStateMachine(scxml);
+        executor.setRootContext(evaluator.newContext(null));
+        executor.setCheckLegalConfiguration(false);
+        return executor;
+    }
+
+    private static State nest(SCXML scxml, String prefix, int depth) {
+        State top = new State();
+        target(scxml, top, prefix + "_1");
+        State current = top;
+        for (int i = 2; i <= depth; i++) {
+            State child = new State();
+            target(scxml, child, prefix + "_" + i);
+            current.addChild(child);
+            current = child;
+        }
+        leaves(scxml, current, prefix + "_" + depth);
+        return top;
+    }
+
+    private static void leaves(SCXML scxml, State parent, String prefix) {
+        State a = new State();
+        target(scxml, a, prefix + "_a");
+        a.addTransition(transition("next", prefix + "_b"));
+        parent.addChild(a);
+
+        State b = new State();
+        target(scxml, b, prefix + "_b");
+        b.addTransition(transition("next", prefix + "_a"));
+        parent.addChild(b);
+    }
+
+    private static Transition transition(String event, String target) {
+        Transition transition = new Transition();
+        transition.setEvent(event);
+        transition.setNext(target);
+        return transition;
+    }
+
+    private static <T extends TransitionTarget> T target(SCXML scxml, T target, String id) {
+        target.setId(id);
+        scxml.addTarget(target);
+        return target;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import javax.faces.state.scxml.io.ContentParser;
+import javax.faces.state.scxml.model.ParsedValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of inline <code>&lt;data&gt;</code> and <code>&lt;content&gt;</code>
+ * bodies through {@link ContentParser#parseContent(String)}.
+ *
+ * @author Waldemar Kłaczyński
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentParserBenchmark {
+
+    @Param({"json", "xml"})
+    public String type;
+
+    @Param({"10", "1000"})
+    public int items;
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        content = "json".equals(type) ? json(items) : Documents.catalog(items);
+    }
+
+    @Benchmark
+    public ParsedValue parseContent() throws Exception {
+        return ContentParser.parseContent(content);
+    }
+
+    private static String json(int items) {
+        StringBuilder sb = new StringBuilder("{\"catalog\": [");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\": \"b").append(i)
+                    .append("\", \"title\": \"Book ").append(i)
+                    .append("\", \"price\": ").append(i % 50)
+                    .append(", \"available\": ").append(i % 2 == 0)
+                    .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+}
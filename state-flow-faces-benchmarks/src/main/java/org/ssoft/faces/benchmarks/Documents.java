@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.io.StringReader;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * Synthetic XML documents.
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class Documents {
+
+    private Documents() {
+    }
+
+    /**
+     * @param items number of books
+     * @return a book catalog document source
+     */
+    public static String catalog(int items) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><catalog>");
+        for (int i = 0; i < items; i++) {
+            sb.append("<book id=\"b").append(i).append("\">")
+                    .append("<title>Book ").append(i).append("</title>")
+                    .append("<price>").append(i % 50).append("</price>")
+                    .append("</book>");
+        }
+        return sb.append("</catalog>").toString();
+    }
+
+    /**
+     * @param source the document source
+     * @return the parsed namespace aware document
+     * @throws Exception if the source can not be parsed
+     */
+    public static Document parse(String source) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(source)));
+    }
+
+}
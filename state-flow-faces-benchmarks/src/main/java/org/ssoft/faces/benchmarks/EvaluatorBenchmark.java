@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import javax.el.ExpressionFactory;
+import javax.el.ValueExpression;
+import javax.faces.state.scxml.Context;
+import javax.faces.state.scxml.Evaluator;
+import javax.faces.state.scxml.SCXMLExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expression evaluation through the
+ * {@link org.ssoft.faces.impl.state.evaluator.StateFlowEvaluator} against the
+ * global context of a running executor.
+ *
+ * @author Waldemar Kłaczyński
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    private BenchmarkFacesContext facesContext;
+    private Evaluator evaluator;
+    private Context context;
+    private ValueExpression value;
+    private ValueExpression condition;
+
+    @Setup
+    public void setup() throws Exception {
+        facesContext = BenchmarkFacesContext.install();
+        SCXMLExecutor executor = Charts.newExecutor("benchmark", Charts.create(Charts.Shape.DEEP, 4));
+        executor.go();
+
+        evaluator = executor.getEvaluator();
+        context = executor.getGlobalContext();
+        context.setLocal("counter", 42);
+        context.setLocal("title", "State Flow Faces");
+
+        ExpressionFactory factory = facesContext.getApplication().getExpressionFactory();
+        value = factory.createValueExpression(facesContext.getELContext(), "#{title}", Object.class);
+        condition = factory.createValueExpression(facesContext.getELContext(), "#{counter > 10 and counter < 100}", Boolean.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        facesContext.release();
+    }
+
+    @Benchmark
+    public Object evalString() throws Exception {
+        return evaluator.eval(context, "#{title}");
+    }
+
+    @Benchmark
+    public Object evalExpression() throws Exception {
+        return evaluator.eval(context, value);
+    }
+
+    @Benchmark
+    public Boolean evalCond() throws Exception {
+        return evaluator.evalCond(context, condition);
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import javax.faces.state.scxml.SCXMLExecutor;
+import javax.faces.state.scxml.TriggerEvent;
+import javax.faces.state.scxml.model.SCXML;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Start up and event processing of {@link SCXMLExecutor} on synthetic charts.
+ *
+ * @author Waldemar Kłaczyński
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    @Param({"DEEP", "WIDE", "HISTORY"})
+    public Charts.Shape shape;
+
+    @Param({"4", "16"})
+    public int size;
+
+    private BenchmarkFacesContext facesContext;
+    private SCXMLExecutor executor;
+    private TriggerEvent[] events;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        facesContext = BenchmarkFacesContext.install();
+        SCXML scxml = Charts.create(shape, size);
+        executor = Charts.newExecutor("benchmark", scxml);
+        executor.go();
+
+        String[] names = shape.getEvents();
+        events = new TriggerEvent[names.length];
+        for (int i = 0; i < names.length; i++) {
+            events[i] = new TriggerEvent(names[i], TriggerEvent.SIGNAL_EVENT);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        facesContext.release();
+    }
+
+    @Benchmark
+    public void go(Blackhole bh) throws Exception {
+        executor.go();
+        bh.consume(executor.getStatus());
+    }
+
+    @Benchmark
+    public void triggerEvent(Blackhole bh) throws Exception {
+        executor.triggerEvent(events[next]);
+        next = (next + 1) % events.length;
+        bh.consume(executor.getStatus());
+    }
+
+    @Benchmark
+    public void triggerUnknownEvent(Blackhole bh) throws Exception {
+        executor.triggerEvent(new TriggerEvent("unknown.event", TriggerEvent.SIGNAL_EVENT));
+        bh.consume(executor.getStatus());
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.faces.state.scxml.SCXMLExecutor;
+import javax.faces.state.scxml.TriggerEvent;
+import javax.faces.state.scxml.env.SimpleContext;
+import javax.faces.state.scxml.io.StateCodec;
+import javax.faces.state.scxml.model.SCXML;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and restoring the state of a running {@link SCXMLExecutor}, the state
+ * tree built by {@link javax.faces.state.scxml.io.StateHolderSaver} is either
+ * java serialized or encoded with the {@link StateCodec}.
+ *
+ * @author Waldemar Kłaczyński
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateSaveBenchmark {
+
+    @Param({"DEEP", "WIDE", "HISTORY"})
+    public Charts.Shape shape;
+
+    @Param({"4", "16"})
+    public int size;
+
+    private BenchmarkFacesContext facesContext;
+    private SCXML scxml;
+    private SCXMLExecutor executor;
+    private byte[] saved;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        facesContext = BenchmarkFacesContext.install();
+        scxml = Charts.create(shape, size);
+        executor = Charts.newExecutor("benchmark", scxml);
+        executor.go();
+        for (String event : shape.getEvents()) {
+            executor.triggerEvent(new TriggerEvent(event, TriggerEvent.SIGNAL_EVENT));
+        }
+        saved = save();
+        encoded = encode();
+    }
+
+    @TearDown
+    public void tearDown() {
+        facesContext.release();
+    }
+
+    @Benchmark
+    public byte[] saveState() throws Exception {
+        return save();
+    }
+
+    @Benchmark
+    public SCXMLExecutor restoreState() throws Exception {
+        Object state;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(saved))) {
+            state = in.readObject();
+        }
+        SCXMLExecutor restored = Charts.newExecutor("benchmark", scxml);
+        restored.restoreState(new SimpleContext(), state);
+        return restored;
+    }
+
+    @Benchmark
+    public byte[] encodeState() throws Exception {
+        return encode();
+    }
+
+    @Benchmark
+    public SCXMLExecutor decodeState() throws Exception {
+        Object state = StateCodec.decode(scxml, encoded);
+        SCXMLExecutor restored = Charts.newExecutor("benchmark", scxml);
+        restored.restoreState(new SimpleContext(), state);
+        return restored;
+    }
+
+    private byte[] encode() throws IOException {
+        return StateCodec.encode(scxml, executor.saveState(new SimpleContext()));
+    }
+
+    private byte[] save() throws IOException {
+        Object state = executor.saveState(new SimpleContext());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import javax.el.ELContext;
+import javax.el.ExpressionFactory;
+import javax.el.StandardELContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ssoft.faces.impl.state.el.xpath.XPathELResolver;
+import org.w3c.dom.Document;
+
+/**
+ * Node selection of {@link XPathELResolver#findNodes} on an XML datamodel.
+ *
+ * @author Waldemar Kłaczyński
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathBenchmark {
+
+    @Param({"10", "1000"})
+    public int items;
+
+    @Param({"/catalog/book[@id='b5']/title", "//book[price > 40]", "@id"})
+    public String expression;
+
+    private ELContext context;
+    private XPathELResolver resolver;
+    private Object base;
+
+    @Setup
+    public void setup() throws Exception {
+        context = new StandardELContext(ExpressionFactory.newInstance());
+        resolver = new XPathELResolver();
+        Document document = Documents.parse(Documents.catalog(items));
+        base = expression.startsWith("@")
+                ? document.getDocumentElement().getFirstChild()
+                : document;
+    }
+
+    @Benchmark
+    public Object findNodes() {
+        return resolver.findNodes(context, base, expression);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed table of locks shared by the flows of all sessions.
+ * <p>
+ * Each flow is guarded by the lock selected by the hash of its session and
+ * flow key, so the requests to one flow run one at a time while the requests
+ * to other flows, even in the same session, do not wait for each other unless
+ * they hash to the same lock.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class FlowLocks {
+
+    private final ReentrantLock[] stripes;
+
+    private final int mask;
+
+    /**
+     * @param concurrency the expected number of flows used at the same time,
+     * rounded up to a power of two
+     */
+    FlowLocks(int concurrency) {
+        int size = 1;
+        while (size < concurrency) {
+            size <<= 1;
+        }
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * @param sessionId the http session id
+     * @param flowKey the flow key
+     * @return the lock of the flow
+     */
+    Lock get(String sessionId, String flowKey) {
+        int hash = 31 * (sessionId != null ? sessionId.hashCode() : 0) + flowKey.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & mask];
+    }
+
+}
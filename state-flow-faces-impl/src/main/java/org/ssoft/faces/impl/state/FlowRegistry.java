@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The flows of one http session keyed by flow key, in least recently used
+ * order.
+ * <p>
+ * Each read of a flow updates its last access time, so the flows idle for too
+ * long and the least recently used flows above the session limit can be found
+ * without scanning the whole registry.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class FlowRegistry extends LinkedHashMap<String, Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Long> accessed = new HashMap<>();
+
+    /**
+     *
+     */
+    FlowRegistry() {
+        super(16, 0.75f, true);
+    }
+
+    /**
+     * @param flows the flows of previous versions
+     */
+    FlowRegistry(Map<String, Object> flows) {
+        this();
+        putAll(flows);
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        Object value = super.get(key);
+        if (value != null) {
+            accessed.put((String) key, System.currentTimeMillis());
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return super.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        accessed.put(key, System.currentTimeMillis());
+        return super.put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        accessed.remove(key);
+        return super.remove(key);
+    }
+
+    /**
+     * Collect the flows to evict, the least recently used first.
+     *
+     * @param current the key of the flow used by the current request, never
+     * evicted and counted even when it is not registered yet
+     * @param maxFlows the maximum number of flows, not limited if not positive
+     * @param idleTimeout the idle time in milliseconds after which a flow
+     * expires, never expires if not positive
+     * @param expired receives the keys of the flows idle for too long
+     * @param evicted receives the keys of the flows above the limit
+     */
+    synchronized void collect(String current, int maxFlows, long idleTimeout,
+            List<String> expired, List<String> evicted) {
+        int count = super.containsKey(current) ? size() : size() + 1;
+        int excess = maxFlows > 0 ? count - maxFlows : 0;
+        long limit = System.currentTimeMillis() - idleTimeout;
+
+        Iterator<String> keys = super.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (key.equals(current)) {
+                continue;
+            }
+            Long time = accessed.get(key);
+            if (idleTimeout > 0 && time != null && time < limit) {
+                expired.add(key);
+                excess--;
+            } else if (excess > 0) {
+                evicted.add(key);
+                excess--;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the keys of the registered flows
+     */
+    synchronized List<String> keys() {
+        return new ArrayList<>(super.keySet());
+    }
+
+}
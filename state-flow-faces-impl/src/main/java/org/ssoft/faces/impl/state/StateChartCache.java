@@ -0,0 +1,383 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.faces.FacesException;
+import javax.faces.application.ProjectStage;
+import javax.faces.application.ViewHandler;
+import javax.faces.context.FacesContext;
+import javax.faces.state.scxml.model.ModelException;
+import javax.faces.state.scxml.model.SCXML;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATEFLOW_REFRESH_PERIOD_PARAM_NAME;
+import org.ssoft.faces.impl.state.config.StateWebConfiguration;
+import org.ssoft.faces.impl.state.log.FlowLogger;
+
+/**
+ * Application wide cache of compiled state charts keyed by view id and chart
+ * id.
+ * <p>
+ * A compiled {@link SCXML} model is never modified after
+ * {@link org.ssoft.faces.impl.state.tag.ModelUpdater#updateSCXML(SCXML)}, so
+ * one instance is shared by all executors of all sessions. Concurrent requests
+ * for the same chart wait for a single build. Entries are checked against the
+ * last modification time of their facelet source once per refresh period,
+ * the same way the facelet factory does.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class StateChartCache {
+
+    private static final Logger LOGGER = FlowLogger.APPLICATION.getLogger();
+
+    private final ConcurrentMap<Key, FutureTask<Entry>> entries = new ConcurrentHashMap<>();
+
+    private final long refreshPeriod;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong buildTime = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     *
+     * @param refreshPeriod the refresh period in milliseconds, a negative value
+     * disables source checking
+     */
+    public StateChartCache(long refreshPeriod) {
+        this.refreshPeriod = refreshPeriod;
+    }
+
+    /**
+     * Create cache configured from the application init parameters.
+     *
+     * @param context the faces context
+     * @return new chart cache
+     */
+    public static StateChartCache create(FacesContext context) {
+        StateWebConfiguration wcfg = StateWebConfiguration.getInstance();
+
+        String value = wcfg.getOptionValue(STATEFLOW_REFRESH_PERIOD_PARAM_NAME);
+        if (value == null) {
+            value = wcfg.getOptionValue(ViewHandler.FACELETS_REFRESH_PERIOD_PARAM_NAME);
+        }
+
+        long period;
+        if (value != null) {
+            try {
+                period = Long.parseLong(value.trim());
+            } catch (NumberFormatException ex) {
+                throw new FacesException(String.format(
+                        "Invalid state chart refresh period \"%s\".", value), ex);
+            }
+        } else if (context.getApplication().getProjectStage() == ProjectStage.Production) {
+            period = -1;
+        } else {
+            period = 2;
+        }
+
+        return new StateChartCache(period < 0 ? -1 : TimeUnit.SECONDS.toMillis(period));
+    }
+
+    /**
+     * Return the cached chart or build it with the supplied builder. Charts
+     * that can not be found (builder returns <code>null</code>) are not
+     * cached.
+     *
+     * @param context the faces context
+     * @param viewId the view id containing chart definition
+     * @param chartId the chart id
+     * @param builder the chart builder
+     * @return the compiled chart or <code>null</code>
+     * @throws ModelException if chart build fails
+     */
+    public SCXML get(FacesContext context, String viewId, String chartId, Callable<SCXML> builder) throws ModelException {
+        Key key = new Key(viewId, chartId);
+
+        while (true) {
+            FutureTask<Entry> task = entries.get(key);
+            if (task != null && task.isDone()) {
+                Entry entry = getEntry(key, task);
+                if (entry != null && !isExpired(context, entry)) {
+                    hits.incrementAndGet();
+                    return entry.scxml;
+                }
+                entries.remove(key, task);
+                continue;
+            }
+
+            boolean owner = false;
+            if (task == null) {
+                FutureTask<Entry> created = new FutureTask<>(() -> build(context, viewId, builder));
+                task = entries.putIfAbsent(key, created);
+                if (task == null) {
+                    task = created;
+                    owner = true;
+                    misses.incrementAndGet();
+                    task.run();
+                }
+            }
+
+            Entry entry;
+            try {
+                entry = task.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new FacesException(ex);
+            } catch (ExecutionException ex) {
+                entries.remove(key, task);
+                Throwable cause = ex.getCause();
+                if (owner) {
+                    if (cause instanceof ModelException) {
+                        throw (ModelException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new FacesException(cause);
+                }
+                continue;
+            }
+
+            if (entry == null) {
+                entries.remove(key, task);
+                return null;
+            }
+
+            if (!owner) {
+                hits.incrementAndGet();
+            }
+            return entry.scxml;
+        }
+    }
+
+    /**
+     * Remove the chart from the cache.
+     *
+     * @param viewId the view id containing chart definition
+     * @param chartId the chart id
+     */
+    public void invalidate(String viewId, String chartId) {
+        if (entries.remove(new Key(viewId, chartId)) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove all charts from the cache.
+     */
+    public void clear() {
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    /**
+     *
+     * @return number of cached charts
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     *
+     * @return number of lookups served from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     *
+     * @return number of lookups that required a chart build
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     *
+     * @return number of charts successfully built
+     */
+    public long getBuildCount() {
+        return builds.get();
+    }
+
+    /**
+     *
+     * @return total time spent on building charts in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime.get();
+    }
+
+    /**
+     *
+     * @return number of entries removed because of changed source or explicit
+     * invalidation
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    private Entry build(FacesContext context, String viewId, Callable<SCXML> builder) throws Exception {
+        long start = System.nanoTime();
+        SCXML scxml = builder.call();
+        if (scxml == null) {
+            return null;
+        }
+        long time = System.nanoTime() - start;
+        builds.incrementAndGet();
+        buildTime.addAndGet(time);
+
+        URL source = getSource(context, viewId, scxml);
+        long lastModified = getLastModified(source);
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, String.format("State chart %s in %s compiled in %d ms.",
+                    scxml.getMetadata().get("faces-chartid"), viewId,
+                    TimeUnit.NANOSECONDS.toMillis(time)));
+        }
+
+        return new Entry(scxml, source, lastModified, System.currentTimeMillis());
+    }
+
+    private Entry getEntry(Key key, FutureTask<Entry> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FacesException(ex);
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    private boolean isExpired(FacesContext context, Entry entry) {
+        if (refreshPeriod < 0 || entry.source == null) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long checked = entry.checked;
+        if (now - checked < refreshPeriod) {
+            return false;
+        }
+
+        synchronized (entry) {
+            if (entry.checked != checked) {
+                return entry.expired;
+            }
+            long lastModified = getLastModified(entry.source);
+            entry.expired = lastModified != entry.lastModified;
+            entry.checked = now;
+            if (entry.expired) {
+                invalidations.incrementAndGet();
+            }
+            return entry.expired;
+        }
+    }
+
+    private static URL getSource(FacesContext context, String viewId, SCXML scxml) {
+        Object source = scxml.getMetadata().get("faces-source-url");
+        if (source instanceof URL) {
+            return (URL) source;
+        }
+        try {
+            return context.getExternalContext().getResource(viewId);
+        } catch (MalformedURLException ex) {
+            return null;
+        }
+    }
+
+    private static long getLastModified(URL url) {
+        if (url == null) {
+            return 0;
+        }
+        try {
+            URLConnection conn = url.openConnection();
+            conn.setUseCaches(false);
+            long lastModified = conn.getLastModified();
+            conn.getInputStream().close();
+            return lastModified;
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static final class Entry {
+
+        private final SCXML scxml;
+        private final URL source;
+        private final long lastModified;
+        private volatile long checked;
+        private volatile boolean expired;
+
+        private Entry(SCXML scxml, URL source, long lastModified, long checked) {
+            this.scxml = scxml;
+            this.source = source;
+            this.lastModified = lastModified;
+            this.checked = checked;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String viewId;
+        private final String chartId;
+        private final int hash;
+
+        private Key(String viewId, String chartId) {
+            this.viewId = viewId;
+            this.chartId = chartId;
+            this.hash = Objects.hash(viewId, chartId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Objects.equals(viewId, other.viewId)
+                    && Objects.equals(chartId, other.chartId);
+        }
+
+    }
+
+}
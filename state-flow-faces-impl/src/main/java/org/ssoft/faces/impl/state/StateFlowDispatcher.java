@@ -40,7 +40,7 @@ import javax.faces.state.scxml.SCXMLIOProcessor;
 import javax.faces.state.scxml.SCXMLSystemContext;
 import javax.faces.state.scxml.SendContext;
 import javax.faces.state.scxml.TriggerEvent;
-import javax.faces.state.scxml.io.StateHolder;
+import javax.faces.state.scxml.io.DirtyStateHolder;
 import javax.faces.state.scxml.model.ActionExecutionError;
 import javax.faces.state.scxml.model.ModelException;
 
@@ -48,8 +48,8 @@ import javax.faces.state.scxml.model.ModelException;
  * <p>
  * EventDispatcher implementation that can execute <code>delay</code>ed
  * &lt;send&gt; events for the &quot;scxml&quot; <code>type</code> attribute
- * value (which is also the default). This implementation uses J2SE
- * <code>Timer</code>s.</p>
+ * value (which is also the default). The due events are added to the queue
+ * of their target processor by the next request.</p>
  *
  * <p>
  * No other <code>type</code>s are processed. Subclasses may support additional
@@ -58,7 +58,7 @@ import javax.faces.state.scxml.model.ModelException;
  * counterparts for the &quot;scxml&quot; <code>type</code>.</p>
  *
  */
-public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder, StateHolder {
+public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder, DirtyStateHolder {
 
     /**
      * Serial version UID.
@@ -81,6 +81,11 @@ public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder,
      */
     private final Map<String, DelayedEventTask> tasks = Collections.synchronizedMap(new LinkedHashMap<>());
 
+    /**
+     * True if the scheduled tasks changed since the last {@link #clearDirty()}.
+     */
+    private volatile boolean dirty = true;
+
     /**
      *
      * @param timerEventProducer
@@ -104,6 +109,7 @@ public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder,
      * @return The currently scheduled tasks
      */
     protected Map<String, DelayedEventTask> getTasks() {
+        dirty = true;
         return tasks;
     }
 
@@ -130,6 +136,7 @@ public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder,
         if (task != null) {
             if (timerEventProducer.cancel(task)) {
                 tasks.remove(sendId);
+                dirty = true;
                 if (log.isLoggable(Level.FINE)) {
                     log.log(Level.FINE, "cancel( sendId: {0})", sendId);
                 }
@@ -223,6 +230,7 @@ public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder,
 
                         if (!timerEventProducer.execute(eventTask)) {
                             tasks.put(id, eventTask);
+                            dirty = true;
                         }
 
                         if (log.isLoggable(Level.FINE)) {
@@ -279,25 +287,28 @@ public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder,
 
     private Object saveTasksState(Context context) {
         Object state = null;
-        if (null != tasks && tasks.size() > 0) {
-            Object[] attached = new Object[tasks.size()];
-            int i = 0;
-            for (Map.Entry<String, DelayedEventTask> entry : tasks.entrySet()) {
-                Object values[] = new Object[3];
-
-                DelayedEventTask task = entry.getValue();
-                values[0] = task.getId();
-                values[1] = task.getTime();
-                values[2] = task.getEvent();
-                attached[i++] = values;
+        synchronized (tasks) {
+            if (tasks.size() > 0) {
+                Object[] attached = new Object[tasks.size()];
+                int i = 0;
+                for (Map.Entry<String, DelayedEventTask> entry : tasks.entrySet()) {
+                    Object values[] = new Object[3];
+
+                    DelayedEventTask task = entry.getValue();
+                    values[0] = task.getId();
+                    values[1] = task.getTime();
+                    values[2] = task.getEvent();
+                    attached[i++] = values;
+                }
+                state = attached;
             }
-            state = attached;
         }
         return state;
     }
 
     private void restoreInvokersState(Context context, Object state) {
         tasks.clear();
+        dirty = true;
 
         Map<String, SCXMLIOProcessor> ioProcessors
                 = (Map<String, SCXMLIOProcessor>) context.get(SCXMLSystemContext.IOPROCESSORS_KEY);
@@ -324,20 +335,45 @@ public class StateFlowDispatcher implements EventDispatcher, FacesProcessHolder,
         }
     }
 
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void clearDirty() {
+        dirty = false;
+    }
+
     @Override
     public void processDecodes(FacesContext context) {
-        Set<String> keys = new LinkedHashSet<>(tasks.keySet());
+        Set<String> keys;
+        synchronized (tasks) {
+            keys = new LinkedHashSet<>(tasks.keySet());
+        }
         for (String key : keys) {
-            DelayedEventTask task = tasks.get(key);
-            if (timerEventProducer.execute(task)) {
-                tasks.remove(key);
+            DelayedEventTask task;
+            synchronized (tasks) {
+                // claim the due task, so a concurrent request can not deliver it twice
+                task = tasks.get(key);
+                if (task == null || System.currentTimeMillis() < task.getTime()
+                        || !tasks.remove(key, task)) {
+                    continue;
+                }
+                dirty = true;
+            }
+            if (!timerEventProducer.execute(task)) {
+                tasks.putIfAbsent(key, task);
             }
         }
     }
 
     @Override
     public void encodeBegin(FacesContext context) throws IOException {
-        List<DelayedEventTask> taskList = new ArrayList<>(tasks.values());
+        List<DelayedEventTask> taskList;
+        synchronized (tasks) {
+            taskList = new ArrayList<>(tasks.values());
+        }
         timerEventProducer.encodeBegin(taskList);
     }
 
@@ -25,39 +25,49 @@ import org.ssoft.faces.impl.state.evaluator.StateFlowEvaluator;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.el.ELContext;
-import javax.enterprise.inject.spi.BeanManager;
 import javax.faces.FacesException;
 import javax.faces.application.Application;
 import javax.faces.application.ProjectStage;
 import javax.faces.application.ViewHandler;
 import javax.faces.component.UIComponent;
 import javax.faces.component.UIViewRoot;
-import javax.faces.component.visit.VisitContext;
-import javax.faces.component.visit.VisitHint;
-import javax.faces.component.visit.VisitResult;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.context.FacesContextWrapper;
 import javax.faces.lifecycle.ClientWindow;
 import javax.faces.state.scxml.Context;
 import javax.faces.state.scxml.SCXMLExecutor;
+import javax.faces.state.events.OnCloseEvent;
 import javax.faces.state.events.OnFinishEvent;
 import javax.faces.state.scxml.invoke.Invoker;
+import javax.faces.state.scxml.io.ContentParser;
 import javax.faces.state.scxml.model.CustomAction;
 import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.ANNOTATED_CLASSES;
+import javax.faces.state.component.UIStateChartExecutor;
 import javax.faces.state.component.UIStateChartMachine;
 import javax.faces.state.StateFlowHandler;
 import javax.faces.state.scxml.model.Action;
@@ -70,7 +80,10 @@ import javax.faces.view.facelets.FaceletException;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_CHART_LOGSTEP_PARAM_NAME;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_CHART_SERIALIZED_PARAM_NAME;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_STACK;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_IDLE_TIMEOUT_PARAM_NAME;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_MAX_FLOWS_PARAM_NAME;
 import org.ssoft.faces.impl.state.cdi.CdiUtil;
+import org.ssoft.faces.impl.state.cdi.StateFlowCDIEvents;
 import org.ssoft.faces.impl.state.cdi.StateFlowCDIHelper;
 import org.ssoft.faces.impl.state.cdi.StateFlowCDIListener;
 import org.ssoft.faces.impl.state.config.StateWebConfiguration;
@@ -84,6 +97,9 @@ import javax.faces.state.annotation.StateChartActions;
 import javax.faces.state.annotation.StateChartInvokers;
 import javax.faces.state.scxml.env.AbstractSCXMLListener;
 import javax.faces.state.scxml.env.SimpleContext;
+import javax.faces.state.scxml.io.StateCodec;
+import javax.faces.state.store.FlowStateStore;
+import org.ssoft.faces.impl.state.store.FlowStateStoreFactory;
 import javax.faces.state.scxml.env.SimpleSCXMLListener;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.FXSCXML_DATA_MODEL;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.SCXML_DATA_MODEL;
@@ -91,6 +107,7 @@ import org.ssoft.faces.impl.state.invokers.FacetInvoker;
 import org.ssoft.faces.impl.state.tag.faces.MethodCall;
 import org.ssoft.faces.impl.state.tag.faces.Redirect;
 import static org.ssoft.faces.impl.state.utils.Util.toViewId;
+import org.ssoft.faces.impl.state.utils.Util;
 import javax.faces.state.execute.ExecuteContext;
 import static javax.faces.state.StateFlow.BUILD_STATE_CONTINER_HINT;
 import static javax.faces.state.StateFlow.BUILD_STATE_MACHINE_HINT;
@@ -104,7 +121,6 @@ import static javax.faces.state.scxml.io.StateHolderSaver.restoreContext;
 import static javax.faces.state.scxml.io.StateHolderSaver.saveContext;
 import static javax.faces.state.StateFlow.FACES_CHART_EXECUTOR_VIEW_ID;
 import static javax.faces.state.StateFlow.STATE_CHART_FACET_NAME;
-import javax.faces.state.component.UIStateChartExecutor;
 import javax.faces.state.scxml.SCXMLSystemContext;
 import javax.faces.state.execute.ExecuteContextManager;
 import static javax.faces.state.StateFlow.FACES_VIEW_ROOT_EXECUTOR_ID;
@@ -130,11 +146,24 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
      */
     public static final String LOGICAL_FLOW_MAP = StateFlowHandlerImpl.class.getName() + ".LogicalFlowMap";
 
+    private static final int DEFAULT_MAX_FLOWS = 64;
+    private static final int FLOW_LOCK_STRIPES = 64;
+
     private Boolean logstep;
     private Boolean alwaysSerialized;
+    private Integer maxFlows;
+    private Long idleTimeout;
+
+    private final AtomicLong evictedFlows = new AtomicLong();
+    private final AtomicLong expiredFlows = new AtomicLong();
+
+    private final FlowLocks flowLocks = new FlowLocks(FLOW_LOCK_STRIPES);
 
     private TimerEventProducer eventProducer;
     private DefaultFaceletFactory faceletFactory;
+    private volatile StateChartCache stateChartCache;
+    private volatile FlowStateStore flowStateStore;
+    private volatile boolean flowStateStoreCreated;
 
     /**
      *
@@ -195,6 +224,86 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
         return eventProducer;
     }
 
+    /**
+     * Return the application wide cache of compiled state charts.
+     *
+     * @param context the faces context
+     * @return the state chart cache
+     */
+    public StateChartCache getStateChartCache(FacesContext context) {
+        StateChartCache cache = stateChartCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = stateChartCache;
+                if (cache == null) {
+                    cache = StateChartCache.create(context);
+                    stateChartCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Return the store of the flow states, the flows are kept in the http
+     * session when no store is configured.
+     *
+     * @param context the faces context
+     * @return the flow state store or <code>null</code>
+     */
+    public FlowStateStore getFlowStateStore(FacesContext context) {
+        if (!flowStateStoreCreated) {
+            synchronized (this) {
+                if (!flowStateStoreCreated) {
+                    flowStateStore = FlowStateStoreFactory.create(context);
+                    flowStateStoreCreated = true;
+                }
+            }
+        }
+        return flowStateStore;
+    }
+
+    /**
+     * Remove the flows of the destroyed session from the flow state store.
+     *
+     * @param session the destroyed session
+     */
+    public void sessionDestroyed(HttpSession session) {
+        FlowStateStore store = flowStateStore;
+        if (store == null) {
+            return;
+        }
+        Map<String, Object> flowMap = (Map<String, Object>) session.getAttribute(LOGICAL_FLOW_MAP);
+        if (flowMap == null) {
+            return;
+        }
+        for (Object storeKey : flowMap.values()) {
+            if (storeKey instanceof String) {
+                try {
+                    store.remove((String) storeKey);
+                } catch (IOException ex) {
+                    log.log(Level.WARNING, String.format(
+                            "Flow state %s can not be removed from the store.", storeKey), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the flow state store when the application is stopped.
+     */
+    public void release() {
+        ContentParser.clearResourceCache();
+        FlowStateStore store = flowStateStore;
+        if (store != null) {
+            try {
+                store.release();
+            } catch (IOException ex) {
+                log.log(Level.WARNING, "Flow state store can not be released.", ex);
+            }
+        }
+    }
+
     private Boolean getAlwaysSerialized() {
         if (alwaysSerialized == null) {
             FacesContext fc = FacesContext.getCurrentInstance();
@@ -261,6 +370,18 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             }
         }
 
+        if (STATE_CHART_FACET_NAME.equals(continerName)) {
+            return getStateChartCache(context).get(context, viewId, id,
+                    () -> buildStateMachine(context, viewId, STATE_CHART_FACET_NAME, id));
+        }
+
+        return buildStateMachine(context, viewId, continerName, id);
+    }
+
+    private SCXML buildStateMachine(FacesContext context, String viewId, String continerName, String id) throws ModelException {
+        SCXML scxml = null;
+        UIViewRoot currentViewRoot = context.getViewRoot();
+
         context.setProcessingEvents(false);
         try {
             context.getAttributes().put(SKIP_START_STATE_MACHINE_HINT, true);
@@ -602,7 +723,11 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             rootCtx = executor.getEvaluator().newContext(flowContext);
         }
 
-        executor.setObservableId(fs.observableId++);
+        executor.setObservableId(fs.nextObservableId());
+        if (parent == null) {
+            // an executor with a parent shares the lock of its parent
+            executor.setExecutionLock(getFlowLock(context, fs.getKey()));
+        }
         executor.setStateMachine(scxml);
         executor.addListener(scxml, new StateFlowCDIListener(executor));
 
@@ -643,7 +768,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
         errorReporter.getTags().putAll(new HashMap<>(tags));
 
         SCXMLExecutor executor = new SCXMLExecutor(id, parent, invokeId, scxml);
-        executor.setObservableId(fs.observableId++);
+        executor.setObservableId(fs.nextObservableId());
 
         executor.setRootContext(executor.getEvaluator().newContext(parent.getRootContext()));
 
@@ -676,6 +801,8 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
 
     @Override
     public void execute(FacesContext context, SCXMLExecutor executor, Map<String, Object> params) {
+        Lock lock = executor.getExecutionLock();
+        lock.lock();
         try {
             boolean root = executor.isRoot();
 
@@ -696,14 +823,14 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                 SCXMLExecutor viewroot = getViewExecutor(context);
                 if (viewroot != null) {
                     String parentId = viewroot.getId();
-                    map.computeIfAbsent(parentId, (key) -> new ArrayList<>())
+                    map.computeIfAbsent(parentId, (key) -> new CopyOnWriteArrayList<>())
                             .add(executorId);
                     roots.put(executorId, parentId);
                 }
             } else {
                 ParentSCXMLIOProcessor ioProcessor = executor.getParentSCXMLIOProcessor();
                 String parentId = ioProcessor.getId();
-                map.computeIfAbsent(parentId, (key) -> new ArrayList<>())
+                map.computeIfAbsent(parentId, (key) -> new CopyOnWriteArrayList<>())
                         .add(executorId);
             }
 
@@ -722,10 +849,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             }
 
             executorEntered(executor);
-            if (CdiUtil.isCdiAvailable(context)) {
-                BeanManager bm = CdiUtil.getCdiBeanManager(context);
-                bm.fireEvent(new OnExecuteEvent(executor));
-            }
+            StateFlowCDIEvents.fire(context, new OnExecuteEvent(executor));
 
             try {
                 executor.go(params);
@@ -744,6 +868,8 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             throw ex;
         } catch (Throwable ex) {
             throw new FacesException(ex);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -758,31 +884,14 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             }
         }
 
-        UIViewRoot viewRoot = fc.getViewRoot();
-        List<String> clientIds = getControllerClientIds(fc);
-        if (clientIds != null && !clientIds.isEmpty()) {
-            Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-            VisitContext visitContext = VisitContext.createVisitContext(fc, clientIds, hints);
-            viewRoot.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                if (target instanceof UIStateChartExecutor) {
-                    UIStateChartExecutor controller = (UIStateChartExecutor) target;
-                    String controllerId = controller.getClientId(fc);
-
-                    SCXMLExecutor cexecutor = null;
-                    String executorId = controller.getExecutorId();
-                    if (executorId != null) {
-                        cexecutor = getRootExecutor(fc, executorId);
-                    }
-
-                    if (cexecutor != null) {
-                        try {
-                            cexecutor.triggerEvent(evt);
-                        } catch (ModelException ex) {
-                            throw new FacesException(ex);
-                        }
-                    }
+        if (evt.getType() == TriggerEvent.CANCEL_EVENT
+                || canControllersConsumeEvent(fc, evt.getName())) {
+            Util.visitControllers(fc, (UIStateChartExecutor controller, SCXMLExecutor cexecutor) -> {
+                try {
+                    cexecutor.triggerEvent(evt);
+                } catch (ModelException ex) {
+                    throw new FacesException(ex);
                 }
-                return VisitResult.ACCEPT;
             });
         }
 
@@ -796,6 +905,37 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
         return (ArrayList<String>) context.getViewRoot().getAttributes().get(CONTROLLER_SET_HINT);
     }
 
+    @Override
+    public List<SCXMLExecutor> getControllerExecutors(FacesContext context) {
+        UIViewRoot viewRoot = context.getViewRoot();
+        if (viewRoot == null) {
+            return Collections.emptyList();
+        }
+        List<String> executorIds = Util.getControllerExecutorIds(viewRoot, false);
+        if (executorIds == null || executorIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<SCXMLExecutor> result = new ArrayList<>(executorIds.size());
+        for (String executorId : executorIds) {
+            SCXMLExecutor executor = getRootExecutor(context, executorId);
+            if (executor != null && !result.contains(executor)) {
+                result.add(executor);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean canControllersConsumeEvent(FacesContext context, String eventName) {
+        for (SCXMLExecutor executor : getControllerExecutors(context)) {
+            if (executor.canConsumeEvent(eventName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void closeAll(FacesContext context) {
         FlowDeque fs = getFlowDeque(context, false);
@@ -824,6 +964,16 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             return;
         }
 
+        Lock lock = executor.getExecutionLock();
+        lock.lock();
+        try {
+            closeExecutor(context, fs, executor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeExecutor(FacesContext context, FlowDeque fs, SCXMLExecutor executor) {
         Map<String, String> roots = fs.getRoots();
         Map<String, SCXMLExecutor> executors = fs.getExecutors();
 
@@ -840,10 +990,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             if (executors.isEmpty()) {
                 closeFlowDeque(context);
             }
-            if (CdiUtil.isCdiAvailable(context)) {
-                BeanManager bm = CdiUtil.getCdiBeanManager(context);
-                bm.fireEvent(new OnFinishEvent(executor));
-            }
+            StateFlowCDIEvents.fire(context, new OnFinishEvent(executor));
         } else if (parentId != null && executors.containsKey(parentId)) {
             try {
                 String outcome = "close";
@@ -928,13 +1075,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             return null;
         }
 
-        Map<String, Object> sessionMap = ec.getSessionMap();
-        Map<String, Object> flowMap = (Map<String, Object>) sessionMap.get(LOGICAL_FLOW_MAP);
-        if (flowMap == null && create) {
-            flowMap = new HashMap<>();
-            sessionMap.put(LOGICAL_FLOW_MAP, flowMap);
-        }
-
+        FlowRegistry flowMap = getFlowRegistry(ec, create);
         if (flowMap == null) {
             return null;
         }
@@ -969,7 +1110,56 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             flowKey = executorId + "_stateFlowStack";
         }
 
-        if (!getAlwaysSerialized()) {
+        evictFlows(fc, flowMap, flowKey, false);
+
+        Lock lock = getFlowLock(fc, flowKey);
+        lock.lock();
+        try {
+            result = loadFlowDeque(fc, flowMap, flowKey, create);
+        } finally {
+            lock.unlock();
+        }
+
+        if (result != null) {
+            if (fc.getAttributes().containsKey(FIRST_FLOW_CONTEXT)) {
+                Context first = (Context) fc.getAttributes().get(FIRST_FLOW_CONTEXT);
+                result.getFlowContext().getVars().putAll(first.getVars());
+                fc.getAttributes().remove(FIRST_FLOW_CONTEXT);
+            }
+        }
+
+        fc.getAttributes().put(STATE_FLOW_STACK, result);
+
+        return result;
+    }
+
+    private FlowDeque loadFlowDeque(FacesContext fc, FlowRegistry flowMap, String flowKey, boolean create) {
+        FlowDeque result = null;
+
+        FlowStateStore store = getFlowStateStore(fc);
+        if (store != null) {
+            Object storeKey = flowMap.get(flowKey);
+            byte[] state = null;
+            if (storeKey instanceof String) {
+                try {
+                    state = store.load((String) storeKey);
+                } catch (IOException ex) {
+                    throw new FacesException(ex);
+                }
+                if (null == state) {
+                    // dropped by the store, the executors of the flow can not
+                    // be closed and its scope is lost
+                    log.log(Level.WARNING, "Flow {0} state {1} is missing in the flow state store, the flow is discarded.",
+                            new Object[]{flowKey, storeKey});
+                    flowMap.remove(flowKey);
+                }
+            }
+            if (null != state) {
+                result = restoreFlowDequeState(fc, state, flowKey);
+            } else if (create) {
+                result = new FlowDeque(flowKey);
+            }
+        } else if (!getAlwaysSerialized()) {
             result = (FlowDeque) flowMap.get(flowKey);
             if (null == result && create) {
                 result = new FlowDeque(flowKey);
@@ -984,22 +1174,23 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
         }
         if (result != null && result.isClosed() && create) {
             result = new FlowDeque(flowKey);
-            flowMap.put(flowKey, result);
-        }
-
-        if (result != null) {
-            if (fc.getAttributes().containsKey(FIRST_FLOW_CONTEXT)) {
-                Context first = (Context) fc.getAttributes().get(FIRST_FLOW_CONTEXT);
-                result.getFlowContext().getVars().putAll(first.getVars());
-                fc.getAttributes().remove(FIRST_FLOW_CONTEXT);
+            if (store == null) {
+                flowMap.put(flowKey, result);
             }
         }
-
-        fc.getAttributes().put(STATE_FLOW_STACK, result);
-
         return result;
     }
 
+    private Lock getFlowLock(FacesContext fc, String flowKey) {
+        String sessionId = fc.getExternalContext().getSessionId(false);
+        if (sessionId == null || sessionId.isEmpty()) {
+            // without a session the flow is not shared with other requests,
+            // the flow keys of all such requests would select one lock
+            return new ReentrantLock();
+        }
+        return flowLocks.get(sessionId, flowKey);
+    }
+
     private void closeFlowDeque(FacesContext context) {
         ExternalContext ec = context.getExternalContext();
         String executorId = getViewExecutorId(context);
@@ -1027,12 +1218,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
         }
 
         ExternalContext ec = context.getExternalContext();
-        Map<String, Object> sessionMap = ec.getSessionMap();
-        Map<String, Object> flowMap = (Map<String, Object>) sessionMap.get(LOGICAL_FLOW_MAP);
-        if (flowMap == null) {
-            flowMap = new HashMap<>();
-            sessionMap.put(LOGICAL_FLOW_MAP, flowMap);
-        }
+        FlowRegistry flowMap = getFlowRegistry(ec, true);
 
         String flowKey = null;
 
@@ -1065,12 +1251,77 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             }
         }
 
-        if (!getAlwaysSerialized()) {
+        boolean added = !flowMap.containsKey(flowKey);
+        if (added) {
+            evictFlows(context, flowMap, flowKey, true);
+        }
+
+        Lock lock = getFlowLock(context, flowKey);
+        lock.lock();
+        try {
+            writeFlowDeque(context, flowMap, flowKey, flowStack, added);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeFlowDeque(FacesContext context, FlowRegistry flowMap, String flowKey, FlowDeque flowStack, boolean added) {
+        FlowStateStore store = getFlowStateStore(context);
+        if (flowStack.isClosed()) {
+            // a closed flow is not kept, its stored state is removed
+            Object value = flowMap.remove(flowKey);
+            if (store != null && value instanceof String) {
+                try {
+                    store.remove((String) value);
+                } catch (IOException ex) {
+                    throw new FacesException(ex);
+                }
+            }
+            if (value != null) {
+                context.getExternalContext().getSessionMap().put(LOGICAL_FLOW_MAP, flowMap);
+            }
+            return;
+        }
+
+        // in heap mode the live flow is put to the session on each request,
+        // so that the container replicates the changes made in place, a
+        // serialized or stored flow is written only if it changed
+        if (store != null || getAlwaysSerialized()) {
+            if (!flowStack.isDirty() && !added) {
+                return;
+            }
+        }
+
+        if (store != null) {
+            // the session holds only the key of the stored flow
+            Object storeKey = flowMap.get(flowKey);
+            boolean created = !(storeKey instanceof String);
+            if (created) {
+                storeKey = UUID.randomUUID().toString();
+            }
+            try {
+                store.store((String) storeKey, flowStack.encodeState(context));
+            } catch (IOException ex) {
+                throw new FacesException(ex);
+            }
+            if (!created) {
+                flowStack.clearDirty();
+                return;
+            }
+            flowMap.put(flowKey, storeKey);
+        } else if (!getAlwaysSerialized()) {
             flowMap.put(flowKey, flowStack);
         } else {
             Object state = saveFlowDequeState(context, flowStack);
+            Object previous = flowMap.get(flowKey);
+            if (previous instanceof byte[] && Arrays.equals((byte[]) previous, (byte[]) state)) {
+                flowStack.clearDirty();
+                return;
+            }
             flowMap.put(flowKey, state);
         }
+        flowStack.clearDirty();
+        context.getExternalContext().getSessionMap().put(LOGICAL_FLOW_MAP, flowMap);
     }
 
     private Object saveFlowDequeState(FacesContext fc, FlowDeque flowDeque) {
@@ -1078,30 +1329,208 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             throw new NullPointerException();
         }
 
-        Object states = flowDeque.saveState(fc);
-        return states;
+        return flowDeque.encodeState(fc);
     }
 
     private static FlowDeque restoreFlowDequeState(FacesContext fc, Object state, String sessionKey) {
         FlowDeque result = new FlowDeque(sessionKey);
-        result.restoreState(fc, state);
+        // the restored executors are created in the restored flow
+        Map<Object, Object> attrs = fc.getAttributes();
+        Object current = attrs.put(STATE_FLOW_STACK, result);
+        try {
+            result.decodeState(fc, state);
+        } finally {
+            if (current != null) {
+                attrs.put(STATE_FLOW_STACK, current);
+            } else {
+                attrs.remove(STATE_FLOW_STACK);
+            }
+        }
         return result;
     }
 
+    private static FlowRegistry getFlowRegistry(ExternalContext ec, boolean create) {
+        Map<String, Object> sessionMap = ec.getSessionMap();
+        Object flowMap = sessionMap.get(LOGICAL_FLOW_MAP);
+        if (flowMap instanceof FlowRegistry) {
+            return (FlowRegistry) flowMap;
+        }
+        if (flowMap == null && !create) {
+            return null;
+        }
+
+        FlowRegistry registry;
+        if (flowMap != null) {
+            registry = new FlowRegistry((Map<String, Object>) flowMap);
+        } else {
+            registry = new FlowRegistry();
+        }
+        sessionMap.put(LOGICAL_FLOW_MAP, registry);
+        return registry;
+    }
+
+    private int getMaxFlows() {
+        if (maxFlows == null) {
+            StateWebConfiguration wcfg = StateWebConfiguration.getInstance();
+            String pname = wcfg.getOptionValue(STATE_FLOW_MAX_FLOWS_PARAM_NAME, String.valueOf(DEFAULT_MAX_FLOWS));
+            maxFlows = Integer.parseInt(pname.trim());
+        }
+        return maxFlows;
+    }
+
+    private long getIdleTimeout() {
+        if (idleTimeout == null) {
+            StateWebConfiguration wcfg = StateWebConfiguration.getInstance();
+            String pname = wcfg.getOptionValue(STATE_FLOW_IDLE_TIMEOUT_PARAM_NAME, "0");
+            idleTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(pname.trim()));
+        }
+        return idleTimeout;
+    }
+
+    private void evictFlows(FacesContext fc, FlowRegistry flowMap, String flowKey, boolean limit) {
+        int max = limit ? getMaxFlows() : 0;
+        long timeout = getIdleTimeout();
+        if (max <= 0 && timeout <= 0) {
+            return;
+        }
+
+        List<String> expired = new ArrayList<>();
+        List<String> evicted = new ArrayList<>();
+        flowMap.collect(flowKey, max, timeout, expired, evicted);
+
+        for (String key : expired) {
+            if (evictFlow(fc, flowMap, key)) {
+                expiredFlows.incrementAndGet();
+            }
+        }
+        for (String key : evicted) {
+            if (evictFlow(fc, flowMap, key)) {
+                evictedFlows.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean evictFlow(FacesContext fc, FlowRegistry flowMap, String flowKey) {
+        Lock lock = getFlowLock(fc, flowKey);
+        // a flow locked by other request is in use, it is not evicted
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            return closeEvictedFlow(fc, flowMap, flowKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean closeEvictedFlow(FacesContext fc, FlowRegistry flowMap, String flowKey) {
+        Object value = flowMap.remove(flowKey);
+        if (value == null) {
+            return false;
+        }
+
+        FlowDeque fs;
+        try {
+            if (value instanceof FlowDeque) {
+                fs = (FlowDeque) value;
+            } else if (value instanceof String) {
+                FlowStateStore store = getFlowStateStore(fc);
+                if (store == null) {
+                    return false;
+                }
+                byte[] state = store.load((String) value);
+                store.remove((String) value);
+                fs = state != null ? restoreFlowDequeState(fc, state, flowKey) : null;
+            } else {
+                fs = restoreFlowDequeState(fc, value, flowKey);
+            }
+        } catch (IOException | FacesException ex) {
+            log.log(Level.WARNING, String.format("Flow %s can not be restored to be closed.", flowKey), ex);
+            return true;
+        }
+
+        if (fs == null || fs.isClosed()) {
+            return true;
+        }
+
+        Map<String, SCXMLExecutor> executors = fs.getExecutors();
+        Map<String, SCXMLExecutor> snapshot = fs.copyExecutors();
+        String flowId = flowKey.substring(0, flowKey.length() - "_stateFlowStack".length());
+        if (!snapshot.isEmpty()) {
+            flowId = snapshot.keySet().iterator().next();
+            int pos = flowId.indexOf(':');
+            if (pos >= 0) {
+                flowId = flowId.substring(0, pos);
+            }
+        }
+
+        Set<SCXMLExecutor> closed = new LinkedHashSet<>(snapshot.values());
+        for (SCXMLExecutor executor : closed) {
+            if (executors.containsKey(executor.getId())) {
+                close(fc, fs, executor);
+            }
+        }
+
+        if (CdiUtil.isCdiAvailable(fc)) {
+            for (SCXMLExecutor executor : closed) {
+                StateFlowCDIEvents.fire(fc, new OnCloseEvent(executor));
+            }
+            StateFlowCDIHelper.flowExited(fs.getFlowContext(), flowId);
+        }
+        fs.close();
+
+        if (log.isLoggable(Level.FINE)) {
+            log.log(Level.FINE, "Flow {0} closed and removed from the session.", flowKey);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of flows closed because the session held too many
+     * flows
+     */
+    public long getEvictedFlowCount() {
+        return evictedFlows.get();
+    }
+
+    /**
+     * @return the number of flows closed because they were not used for too
+     * long
+     */
+    public long getExpiredFlowCount() {
+        return expiredFlows.get();
+    }
+
     private static class FlowDeque implements Serializable {
 
+        /**
+         * The executors in the order of their creation, a parent executor
+         * precedes its children. The flow is shared by the concurrent requests
+         * of its session, iterate over {@link #copyExecutors()}.
+         */
         private final Map<String, SCXMLExecutor> executors;
         private final Map<String, String> roots;
         private final Map<String, List<String>> map;
         private final String key;
         private final SimpleContext flowContext;
-        private Integer observableId = 0;
-        private boolean closed;
+        private final AtomicInteger observableId = new AtomicInteger();
+        private volatile boolean closed;
+
+        /**
+         * The last encoded state of each root executor, reused while the
+         * executor is not dirty.
+         */
+        private transient Map<String, byte[]> encoded;
+
+        /**
+         * The flow structure as it was last saved or restored.
+         */
+        private transient List<Object> saved;
 
         public FlowDeque(final String sessionKey) {
-            executors = new LinkedHashMap<>();
-            roots = new HashMap<>();
-            map = new HashMap<>();
+            executors = Collections.synchronizedMap(new LinkedHashMap<>());
+            roots = new ConcurrentHashMap<>();
+            map = new ConcurrentHashMap<>();
             flowContext = new SimpleContext();
             this.key = sessionKey;
         }
@@ -1134,12 +1563,65 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             return flowContext;
         }
 
+        public Map<String, SCXMLExecutor> copyExecutors() {
+            synchronized (executors) {
+                return new LinkedHashMap<>(executors);
+            }
+        }
+
         public Integer getObservableId() {
-            return observableId;
+            return observableId.get();
         }
 
         public void setObservableId(Integer observableId) {
-            this.observableId = observableId;
+            this.observableId.set(observableId);
+        }
+
+        public int nextObservableId() {
+            return observableId.getAndIncrement();
+        }
+
+        /**
+         * @return true if the flow structure, the flow context or any of the
+         * executors changed since the last {@link #clearDirty()}
+         */
+        public boolean isDirty() {
+            if (saved == null || flowContext.isDirty()) {
+                return true;
+            }
+            for (SCXMLExecutor executor : copyExecutors().values()) {
+                if (executor.isDirty()) {
+                    return true;
+                }
+            }
+            return !saved.equals(structure());
+        }
+
+        /**
+         * Marks the current state of this flow as saved.
+         */
+        public void clearDirty() {
+            flowContext.clearDirty();
+            for (SCXMLExecutor executor : copyExecutors().values()) {
+                executor.clearDirty();
+            }
+            saved = structure();
+        }
+
+        private List<Object> structure() {
+            Map<String, List<String>> ids = new HashMap<>(map.size());
+            for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+                ids.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return Arrays.asList(closed, getObservableId(), new HashMap<>(roots),
+                    new ArrayList<>(copyExecutors().keySet()), ids);
+        }
+
+        private Map<String, byte[]> getEncoded() {
+            if (encoded == null) {
+                encoded = new HashMap<>();
+            }
+            return encoded;
         }
 
         // ----------------------------------------------- Serialization Methods
@@ -1148,14 +1630,41 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
         // doesn't actually serialize the FlowDeque, these methods are here
         // purely to be good citizens.
         private void writeObject(ObjectOutputStream out) throws IOException {
-            Object states = saveState(FacesContext.getCurrentInstance());
-            //noinspection NonSerializableObjectPassedToObjectStream
+            byte[] states = encodeState(FacesContext.getCurrentInstance());
             out.writeObject(states);
         }
 
         private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
             Object state = in.readObject();
-            restoreState(FacesContext.getCurrentInstance(), state);
+            decodeState(FacesContext.getCurrentInstance(), state);
+        }
+
+        /**
+         * @param fc the faces context
+         * @return the state of this flow in the binary {@link StateCodec} form
+         */
+        public byte[] encodeState(FacesContext fc) {
+            try {
+                return StateCodec.encode(null, saveState(fc));
+            } catch (IOException ex) {
+                throw new FacesException(ex);
+            }
+        }
+
+        /**
+         * @param fc the faces context
+         * @param state the state in the binary {@link StateCodec} form, or
+         * the state tree saved by previous versions
+         */
+        public void decodeState(FacesContext fc, Object state) {
+            if (StateCodec.isEncoded(state)) {
+                try {
+                    state = StateCodec.decode(null, (byte[]) state);
+                } catch (IOException ex) {
+                    throw new FacesException(ex);
+                }
+            }
+            restoreState(fc, state);
         }
 
         public Object saveState(FacesContext fc) {
@@ -1163,7 +1672,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             Object states[] = new Object[6];
 
             states[0] = closed;
-            states[1] = observableId;
+            states[1] = getObservableId();
 
             if (null != roots && !roots.isEmpty()) {
                 Object[] attached = new Object[roots.size()];
@@ -1178,11 +1687,13 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                 states[2] = attached;
             }
 
-            if (null != executors && !executors.isEmpty()) {
-                Object[] attached = new Object[executors.size()];
+            Map<String, SCXMLExecutor> current = copyExecutors();
+            if (!current.isEmpty()) {
+                Object[] attached = new Object[current.size()];
                 int i = 0;
-                for (String executorId : executors.keySet()) {
-                    SCXMLExecutor executor = executors.get(executorId);
+                for (Map.Entry<String, SCXMLExecutor> executorEntry : current.entrySet()) {
+                    String executorId = executorEntry.getKey();
+                    SCXMLExecutor executor = executorEntry.getValue();
                     boolean root = executor.isRoot();
                     Object values[] = new Object[7];
                     SCXML stateMachine = executor.getStateMachine();
@@ -1201,13 +1712,23 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                     values[4] = parentId;
                     values[5] = invokeId;
                     if (root) {
-                        values[6] = executor.saveState(context);
+                        byte[] executorState = getEncoded().get(executorId);
+                        if (executorState == null || executor.isDirty()) {
+                            try {
+                                executorState = StateCodec.encode(stateMachine, executor.saveState(context));
+                            } catch (IOException ex) {
+                                throw new FacesException(ex);
+                            }
+                            getEncoded().put(executorId, executorState);
+                        }
+                        values[6] = executorState;
                     }
 
                     attached[i++] = values;
                 }
                 states[3] = attached;
             }
+            getEncoded().keySet().retainAll(current.keySet());
 
             states[4] = saveMapState(map);
 
@@ -1223,15 +1744,16 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
             roots.clear();
             map.clear();
             flowContext.getVars().clear();
+            getEncoded().clear();
 
             if (null != state) {
                 Object[] blocks = (Object[]) state;
 
                 closed = (boolean) blocks[0];
-                observableId = (Integer) blocks[1];
+                setObservableId((Integer) blocks[1]);
 
-                if (blocks[1] != null) {
-                    Object[] values = (Object[]) blocks[1];
+                if (blocks[2] != null) {
+                    Object[] values = (Object[]) blocks[2];
                     for (Object value : values) {
                         Object[] entry = (Object[]) value;
                         roots.put(String.valueOf(entry[0]), String.valueOf(entry[1]));
@@ -1243,7 +1765,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                     for (Object entry : entries) {
                         Object[] values = (Object[]) entry;
 
-                        Boolean root = (Boolean) values[1];
+                        Boolean root = (Boolean) values[0];
                         String executorId = (String) values[1];
                         String viewId = (String) values[2];
                         String chartId = (String) values[3];
@@ -1275,7 +1797,16 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                             } catch (ModelException ex) {
                                 throw new FacesException(ex);
                             }
-                            executor.restoreState(context, values[5]);
+                            Object executorState = values[6];
+                            if (StateCodec.isEncoded(executorState)) {
+                                getEncoded().put(executorId, (byte[]) executorState);
+                                try {
+                                    executorState = StateCodec.decode(stateMachine, (byte[]) executorState);
+                                } catch (IOException ex) {
+                                    throw new FacesException(ex);
+                                }
+                            }
+                            executor.restoreState(context, executorState);
                         } else {
                             String parentId = (String) values[4];
                             executor = executors.get(parentId);
@@ -1295,6 +1826,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                 }
 
             }
+            clearDirty();
         }
 
         private Object saveMapState(Map<String, List<String>> map) {
@@ -1322,7 +1854,7 @@ public final class StateFlowHandlerImpl extends StateFlowHandler {
                 for (Object value : values) {
                     Object[] entry = (Object[]) value;
 
-                    List<String> ids = new ArrayList<>();
+                    List<String> ids = new CopyOnWriteArrayList<>();
                     restoreIdsState(ids, entry[1]);
 
                     map.put(String.valueOf(entry[0]), ids);
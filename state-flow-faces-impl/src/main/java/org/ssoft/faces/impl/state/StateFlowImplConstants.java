@@ -71,6 +71,58 @@ public class StateFlowImplConstants {
      */
     public final static String STATE_USE_FLASH_REDIRECT_PARAM_NAME = STATE_FLOW_PREFIX + "DEFAULT_USE_FLASH_IN_REDIRECT";
 
+    /**
+     * The flow state store: <code>session</code> (default), <code>heap</code>,
+     * <code>file</code>, <code>remote</code> (through the registered
+     * {@link javax.faces.state.store.FlowStateStoreConnector}) or the class
+     * name of a {@link javax.faces.state.store.FlowStateStore}.
+     */
+    public final static String STATE_FLOW_STORE_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_STORE";
+
+    /**
+     * The maximum number of flows in the heap store.
+     */
+    public final static String STATE_FLOW_STORE_SIZE_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_STORE_SIZE";
+
+    /**
+     * The path of the file store.
+     */
+    public final static String STATE_FLOW_STORE_FILE_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_STORE_FILE";
+
+    /**
+     * The age in seconds of the flows in the file store kept when the
+     * application is started, should match the session timeout if the
+     * sessions are persistent. The file store is cleared on start if not
+     * positive (default).
+     */
+    public final static String STATE_FLOW_STORE_FILE_MAX_AGE_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_STORE_FILE_MAX_AGE";
+
+    /**
+     * The maximum number of flows kept in one session, the least recently
+     * used flow is closed when it is exceeded. Not limited if not positive.
+     */
+    public final static String STATE_FLOW_MAX_FLOWS_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_MAX_FLOWS";
+
+    /**
+     * The time in seconds after which an unused flow is closed. Never if not
+     * positive.
+     */
+    public final static String STATE_FLOW_IDLE_TIMEOUT_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_IDLE_TIMEOUT";
+
+    /**
+     * The maximum number of parsed expressions kept with each compiled state
+     * chart. Disabled if not positive.
+     */
+    public final static String STATE_FLOW_EXPRESSION_CACHE_SIZE_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_EXPRESSION_CACHE_SIZE";
+
+    /**
+     * If true the finish and close events of the executors are also fired
+     * asynchronously to the <code>@ObservesAsync</code> observers. The other
+     * lifecycle events are fired only synchronously, since they carry the
+     * executor still running. Disabled by default.
+     */
+    public final static String STATE_FLOW_CDI_ASYNC_EVENTS_PARAM_NAME = STATE_FLOW_PREFIX + "STATE_FLOW_CDI_ASYNC_EVENTS";
+
     /**
      *
      */
@@ -101,6 +153,11 @@ public class StateFlowImplConstants {
      */
     public static final String CDI_AVAILABLE = STATE_FLOW_PREFIX + "cdi.AvailableFlag";
 
+    /**
+     *
+     */
+    public static final String CDI_EVENTS = STATE_FLOW_PREFIX + "cdi.Events";
+
     /**
      *
      */
@@ -15,8 +15,6 @@
  */
 package org.ssoft.faces.impl.state;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import javax.faces.application.Application;
@@ -39,21 +37,15 @@ public class TimerEventProducerImpl extends TimerEventProducer {
     public void encodeBegin(List<DelayedEventTask> taskList) {
         FacesContext context = FacesContext.getCurrentInstance();
         Map<Object, Object> attrs = context.getAttributes();
-        if (!taskList.isEmpty()) {
-            DelayedEventTask curTask = (DelayedEventTask) attrs.get(STATE_FLOW_DISPATCH_TASK);
-            taskList = new ArrayList<>(taskList);
-
-            Collections.sort(taskList, (o1, o2) -> {
-                return (int) (o1.getTime() - o2.getTime());
-            });
-            DelayedEventTask newTask = taskList.get(0);
-
-            if (curTask == null) {
-                curTask = newTask;
-            } else if (curTask.getTime() > newTask.getTime()) {
-                curTask = newTask;
+        DelayedEventTask curTask = (DelayedEventTask) attrs.get(STATE_FLOW_DISPATCH_TASK);
+        DelayedEventTask newTask = curTask;
+        for (DelayedEventTask task : taskList) {
+            if (newTask == null || task.getTime() < newTask.getTime()) {
+                newTask = task;
             }
-            attrs.put(STATE_FLOW_DISPATCH_TASK, curTask);
+        }
+        if (newTask != curTask) {
+            attrs.put(STATE_FLOW_DISPATCH_TASK, newTask);
         }
 
     }
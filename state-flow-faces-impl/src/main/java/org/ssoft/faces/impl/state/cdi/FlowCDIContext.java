@@ -143,9 +143,16 @@ public class FlowCDIContext implements Context, Serializable {
     }
 
     static void flowExited() {
+        FacesContext facesContext = FacesContext.getCurrentInstance();
+        flowExited(facesContext, StateScopeMapHelper.flow(facesContext, FLOW_SCOPE_KEY));
+    }
 
+    static void flowExited(javax.faces.state.scxml.Context flowContext, String flowId) {
         FacesContext facesContext = FacesContext.getCurrentInstance();
-        StateScopeMapHelper mapHelper = StateScopeMapHelper.flow(facesContext, FLOW_SCOPE_KEY);
+        flowExited(facesContext, new StateScopeMapHelper(facesContext, flowContext, FLOW_SCOPE_KEY, flowId, false));
+    }
+
+    private static void flowExited(FacesContext facesContext, StateScopeMapHelper mapHelper) {
         javax.faces.state.scxml.Context flowScopedBeanMap = mapHelper.getScopeBeanContext();
         Map<String, CreationalContext<?>> creationalMap = mapHelper.getScopedCreationalMap();
         assert (!flowScopedBeanMap.getVars().isEmpty());
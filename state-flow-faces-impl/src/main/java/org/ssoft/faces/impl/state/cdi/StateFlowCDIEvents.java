@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.cdi;
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.faces.context.FacesContext;
+import javax.faces.state.events.OnCloseEvent;
+import javax.faces.state.events.OnFinishEvent;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.CDI_EVENTS;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_CDI_ASYNC_EVENTS_PARAM_NAME;
+import static org.ssoft.faces.impl.state.cdi.StateFlowCDIExtension.ASYNC_OBSERVERS;
+import static org.ssoft.faces.impl.state.cdi.StateFlowCDIExtension.SYNC_OBSERVERS;
+import org.ssoft.faces.impl.state.config.StateWebConfiguration;
+import org.ssoft.faces.impl.state.log.FlowLogger;
+
+/**
+ * Fires the state flow lifecycle events to the CDI observers.
+ * <p>
+ * The observers of the lifecycle event types are resolved once by
+ * {@link StateFlowCDIExtension}, an event without observers is not fired at
+ * all. The <code>@Observes</code> observers are notified on the calling
+ * thread. When {@link org.ssoft.faces.impl.state.StateFlowImplConstants#STATE_FLOW_CDI_ASYNC_EVENTS_PARAM_NAME}
+ * is enabled the {@link OnFinishEvent} and {@link OnCloseEvent} are also
+ * fired asynchronously to the <code>@ObservesAsync</code> observers, which
+ * never run on the request thread and must not rely on the faces context.</p>
+ * <p>
+ * The other lifecycle events carry the executor while it runs the state
+ * machine on the request thread, an asynchronous observer would read its
+ * state concurrently. They are never fired asynchronously.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class StateFlowCDIEvents {
+
+    private static final Logger log = FlowLogger.CDI.getLogger();
+
+    private final BeanManager beanManager;
+    private final StateFlowCDIExtension extension;
+    private final boolean async;
+
+    private StateFlowCDIEvents(BeanManager beanManager, StateFlowCDIExtension extension, boolean async) {
+        this.beanManager = beanManager;
+        this.extension = extension;
+        this.async = async;
+    }
+
+    /**
+     * Fire the event to its observers, does nothing if CDI is not available.
+     *
+     * @param context the faces context
+     * @param event the event
+     */
+    public static void fire(FacesContext context, Object event) {
+        if (CdiUtil.isCdiAvailable(context)) {
+            if (context != null) {
+                getInstance(context).fire(event);
+            } else {
+                CdiUtil.getCdiBeanManager(null).fireEvent(event);
+            }
+        }
+    }
+
+    private static StateFlowCDIEvents getInstance(FacesContext context) {
+        Map<String, Object> applicationMap = context.getExternalContext().getApplicationMap();
+        StateFlowCDIEvents events = (StateFlowCDIEvents) applicationMap.get(CDI_EVENTS);
+        if (events == null) {
+            BeanManager bm = CdiUtil.getCdiBeanManager(context);
+            StateFlowCDIExtension extension = null;
+            try {
+                extension = bm.getExtension(StateFlowCDIExtension.class);
+            } catch (IllegalArgumentException ex) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.log(Level.FINE, "State flow CDI extension not registered.", ex);
+                }
+            }
+
+            StateWebConfiguration wcfg = StateWebConfiguration.getInstance();
+            String pname = wcfg.getOptionValue(STATE_FLOW_CDI_ASYNC_EVENTS_PARAM_NAME, "false");
+
+            events = new StateFlowCDIEvents(bm, extension, Boolean.parseBoolean(pname));
+            applicationMap.put(CDI_EVENTS, events);
+        }
+        return events;
+    }
+
+    private int getObservers(Class<?> eventType) {
+        int observers = extension != null
+                ? extension.getObservers(eventType)
+                : SYNC_OBSERVERS | ASYNC_OBSERVERS;
+        return async && isTerminal(eventType) ? observers : observers & SYNC_OBSERVERS;
+    }
+
+    private static boolean isTerminal(Class<?> eventType) {
+        return OnFinishEvent.class.isAssignableFrom(eventType)
+                || OnCloseEvent.class.isAssignableFrom(eventType);
+    }
+
+    private void fire(Object event) {
+        int observers = getObservers(event.getClass());
+        if ((observers & SYNC_OBSERVERS) != 0) {
+            beanManager.fireEvent(event);
+        }
+        if ((observers & ASYNC_OBSERVERS) != 0) {
+            beanManager.getEvent().fireAsync(event).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    log.log(Level.WARNING, String.format(
+                            "Asynchronous observer of %s failed.", event.getClass().getSimpleName()), ex);
+                }
+            });
+        }
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.ssoft.faces.impl.state.cdi;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -22,15 +24,23 @@ import java.util.logging.Logger;
 import javax.enterprise.context.spi.Contextual;
 import javax.enterprise.event.Observes;
 import javax.enterprise.inject.spi.AfterBeanDiscovery;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.BeforeBeanDiscovery;
 import javax.enterprise.inject.spi.Extension;
+import javax.enterprise.inject.spi.ObserverMethod;
 import javax.enterprise.inject.spi.ProcessBean;
 import org.ssoft.faces.impl.state.log.FlowLogger;
 import javax.faces.state.annotation.DialogScoped;
 import javax.faces.state.annotation.ChartScoped;
 import javax.faces.state.annotation.StateScoped;
+import javax.faces.state.events.OnCloseEvent;
+import javax.faces.state.events.OnEntryEvent;
+import javax.faces.state.events.OnExecuteEvent;
+import javax.faces.state.events.OnExitEvent;
+import javax.faces.state.events.OnFinishEvent;
+import javax.faces.state.events.OnTransitionEvent;
 import org.kohsuke.MetaInfServices;
 
 /**
@@ -40,6 +50,32 @@ import org.kohsuke.MetaInfServices;
 @MetaInfServices(Extension.class)
 public class StateFlowCDIExtension implements Extension {
 
+    /**
+     * The event type has synchronous observers.
+     */
+    public static final int SYNC_OBSERVERS = 1;
+
+    /**
+     * The event type has asynchronous observers.
+     */
+    public static final int ASYNC_OBSERVERS = 2;
+
+    /**
+     * The lifecycle events fired by the state flow for each executor and
+     * state change, their observers are resolved once the deployment is
+     * validated.
+     */
+    private static final Object[] LIFECYCLE_EVENTS = {
+        new OnExecuteEvent(null),
+        new OnFinishEvent(null),
+        new OnCloseEvent(null),
+        new OnEntryEvent(null, null),
+        new OnExitEvent(null, null),
+        new OnTransitionEvent(null, null, null, null, null)
+    };
+
+    private volatile Map<Class<?>, Integer> observers;
+
     private boolean cdiOneOneOrGreater = false;
 
     private final Map<Contextual<?>, StateCDIContext.TargetBeanInfo> targetScopedBeanFlowIds;
@@ -129,4 +165,37 @@ public class StateFlowCDIExtension implements Extension {
 
     }
 
+    /**
+     *
+     * @param event
+     * @param beanManager
+     */
+    public void afterDeploymentValidation(@Observes final AfterDeploymentValidation event, BeanManager beanManager) {
+        Map<Class<?>, Integer> result = new HashMap<>();
+        for (Object prototype : LIFECYCLE_EVENTS) {
+            int found = 0;
+            for (ObserverMethod<?> method : beanManager.resolveObserverMethods(prototype)) {
+                found |= method.isAsync() ? ASYNC_OBSERVERS : SYNC_OBSERVERS;
+            }
+            result.put(prototype.getClass(), found);
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Observers of {0}: {1}", new Object[]{prototype.getClass().getSimpleName(), found});
+            }
+        }
+        observers = Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Return the kinds of observers of the event type, any observer is
+     * assumed for the types not resolved at the deployment.
+     *
+     * @param eventType the event type
+     * @return the {@link #SYNC_OBSERVERS} and {@link #ASYNC_OBSERVERS} flags
+     */
+    public int getObservers(Class<?> eventType) {
+        Map<Class<?>, Integer> resolved = observers;
+        Integer found = resolved != null ? resolved.get(eventType) : null;
+        return found != null ? found : SYNC_OBSERVERS | ASYNC_OBSERVERS;
+    }
+
 }
@@ -15,6 +15,7 @@
  */
 package org.ssoft.faces.impl.state.cdi;
 
+import javax.faces.state.scxml.Context;
 import javax.faces.state.scxml.SCXMLExecutor;
 import javax.faces.state.scxml.model.EnterableState;
 
@@ -38,6 +39,16 @@ public class StateFlowCDIHelper {
         FlowCDIContext.flowExited();
     }
 
+    /**
+     * Destroy the flow scope of a flow which is not the current one.
+     *
+     * @param flowContext the context of the flow
+     * @param flowId the flow id
+     */
+    public static void flowExited(Context flowContext, String flowId) {
+        FlowCDIContext.flowExited(flowContext, flowId);
+    }
+
     /**
      *
      * @param executor
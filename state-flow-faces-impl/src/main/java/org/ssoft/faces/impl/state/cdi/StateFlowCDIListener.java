@@ -16,7 +16,6 @@
 package org.ssoft.faces.impl.state.cdi;
 
 import java.io.Serializable;
-import javax.enterprise.inject.spi.BeanManager;
 import javax.faces.context.FacesContext;
 import javax.faces.state.events.OnCloseEvent;
 import javax.faces.state.events.OnEntryEvent;
@@ -52,8 +51,7 @@ public class StateFlowCDIListener implements SCXMLListener, Serializable {
         if (CdiUtil.isCdiAvailable(fc)) {
             StateFlowCDIHelper.stateEntered(executor, tt);
             
-            BeanManager bm = CdiUtil.getCdiBeanManager(fc);
-            bm.fireEvent(new OnEntryEvent(executor, tt));
+            StateFlowCDIEvents.fire(fc, new OnEntryEvent(executor, tt));
             
             if(tt instanceof State) {
                 State state = (State) tt;
@@ -68,10 +66,7 @@ public class StateFlowCDIListener implements SCXMLListener, Serializable {
     @Override
     public void onTransition(TransitionTarget from, TransitionTarget to, Transition t, String event) {
         FacesContext fc = FacesContext.getCurrentInstance();
-        if (CdiUtil.isCdiAvailable(fc)) {
-            BeanManager bm = CdiUtil.getCdiBeanManager(fc);
-            bm.fireEvent(new OnTransitionEvent(executor, from, to, t, event));
-        }
+        StateFlowCDIEvents.fire(fc, new OnTransitionEvent(executor, from, to, t, event));
     }
 
     @Override
@@ -80,8 +75,7 @@ public class StateFlowCDIListener implements SCXMLListener, Serializable {
         if (CdiUtil.isCdiAvailable(fc)) {
             StateFlowCDIHelper.stateExited(executor, tt);
             
-            BeanManager bm = CdiUtil.getCdiBeanManager(fc);
-            bm.fireEvent(new OnExitEvent(executor, tt));
+            StateFlowCDIEvents.fire(fc, new OnExitEvent(executor, tt));
         }
     }
 
@@ -92,10 +86,7 @@ public class StateFlowCDIListener implements SCXMLListener, Serializable {
         }
         
         FacesContext fc = FacesContext.getCurrentInstance();
-        if (CdiUtil.isCdiAvailable(fc)) {
-            BeanManager bm = CdiUtil.getCdiBeanManager(fc);
-            bm.fireEvent(new OnCloseEvent(executor));
-        }
+        StateFlowCDIEvents.fire(fc, new OnCloseEvent(executor));
     }
 
 }
@@ -57,7 +57,10 @@ public class StateFlowConfigureListener implements ServletContextListener, HttpS
      */
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        // Do Nothing
+        Object handler = sce.getServletContext().getAttribute(StateFlowHandler.KEY);
+        if (handler instanceof StateFlowHandlerImpl) {
+            ((StateFlowHandlerImpl) handler).release();
+        }
     }
 
     /**
@@ -79,6 +82,11 @@ public class StateFlowConfigureListener implements ServletContextListener, HttpS
         ChartCDIContext.sessionDestroyed(se);
         DialogCDIContext.sessionDestroyed(se);
         StateCDIContext.sessionDestroyed(se);
+
+        Object handler = se.getSession().getServletContext().getAttribute(StateFlowHandler.KEY);
+        if (handler instanceof StateFlowHandlerImpl) {
+            ((StateFlowHandlerImpl) handler).sessionDestroyed(se.getSession());
+        }
     }
 
 }
@@ -38,7 +38,7 @@ public class JSTLXPathNamespaceContext implements NamespaceContext {
      *
      */
     protected Map< String, String> map = new HashMap<>();
-    private final Document document;
+    private Document document;
 
     /**
      *
@@ -48,6 +48,16 @@ public class JSTLXPathNamespaceContext implements NamespaceContext {
         this.document = document;
     }
 
+    /**
+     * Bind the context to the document resolving the prefixes not added to
+     * this context.
+     *
+     * @param document the document
+     */
+    void setDocument(Document document) {
+        this.document = document;
+    }
+
     /**
      *
      * @param namespaceURI
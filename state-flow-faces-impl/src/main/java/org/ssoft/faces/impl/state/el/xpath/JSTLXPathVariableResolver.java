@@ -28,7 +28,7 @@ import javax.xml.xpath.XPathVariableResolver;
  */
 public class JSTLXPathVariableResolver implements XPathVariableResolver {
 
-    private final ELContext context;
+    private ELContext context;
 
     /**
      *
@@ -38,6 +38,18 @@ public class JSTLXPathVariableResolver implements XPathVariableResolver {
         this.context = context;
     }
 
+    /**
+     * Bind the resolver to the context evaluating the variables.
+     *
+     * @param context the EL context
+     * @return the previous context
+     */
+    ELContext setContext(ELContext context) {
+        ELContext previous = this.context;
+        this.context = context;
+        return previous;
+    }
+
     @Override
     public Object resolveVariable(QName qname) throws NullPointerException {
 
@@ -18,7 +18,6 @@ package org.ssoft.faces.impl.state.el.xpath;
 import java.beans.FeatureDescriptor;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -34,10 +33,8 @@ import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathVariableResolver;
 import org.ssoft.faces.impl.state.log.FlowLogger;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.DOMImplementation;
@@ -58,23 +55,13 @@ public class XPathELResolver extends ELResolver {
      */
     public static final Logger log = FlowLogger.EL.getLogger();
 
-    private static XPathFactory XPATH_FACTORY;
-    private static HashMap exprCache;
+    private static final String TRANSFORM_NS = "http://www.w3.org/1999/XSL/Transform";
 
-    private static DocumentBuilderFactory dbf = null;
-    private static DocumentBuilder db = null;
-    private static Document d = null;
-
-    private final ThreadLocal<String> modifiedXPath = new ThreadLocal<>();
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
 
     static {
-        XPATH_FACTORY = XPathFactory.newInstance();
-    }
-
-    private synchronized static void staticInit() {
-        if (exprCache == null) {
-            exprCache = new HashMap();
-        }
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+        DOCUMENT_BUILDER_FACTORY.setValidating(false);
     }
 
     private final boolean isReadOnly;
@@ -490,36 +477,29 @@ public class XPathELResolver extends ELResolver {
             expression = "self::node()" + expression;
         }
 
-        XPathVariableResolver jxvr = new JSTLXPathVariableResolver(context);
-
-        String type = "NODESET";
-        String typens = "http://www.w3.org/1999/XSL/Transform";
-
+        QName returnType = XPathConstants.NODESET;
         int sep = expression.lastIndexOf(";");
         if (sep > 0) {
-            type = expression.substring(sep + 1);
+            String type = expression.substring(sep + 1);
+            String typens = TRANSFORM_NS;
             expression = expression.substring(0, sep);
             sep = type.indexOf(":");
             if (sep > 0) {
                 typens = type.substring(0, sep - 1);
                 type = type.substring(sep);
             }
+            returnType = new QName(typens, type);
         }
 
         try {
-            QName RETUTN_TYPE = new QName(typens, type);
-            XPath xpath = XPATH_FACTORY.newXPath();
             Document document;
             if (contextNode instanceof Document) {
                 document = (Document) contextNode;
             } else {
                 document = contextNode.getOwnerDocument();
             }
-            JSTLXPathNamespaceContext nc = new JSTLXPathNamespaceContext(document);
-
-            xpath.setNamespaceContext(nc);
-            xpath.setXPathVariableResolver(jxvr);
-            Object nl = xpath.evaluate(expression, contextNode, RETUTN_TYPE);
+            Object nl = XPathExpressionCache.get().evaluate(
+                    context, expression, contextNode, document, returnType);
             if (nl instanceof Node) {
                 return new XPathNodeList(contextNode, nl);
             } else if (nl instanceof NodeList) {
@@ -541,8 +521,6 @@ public class XPathELResolver extends ELResolver {
      * @throws ELException
      */
     public Object selectNodes(ELContext context, Object base, String expression) throws ELException {
-        staticInit();
-
         if (base instanceof XPathNodeList) {
             XPathNodeList nlist = (XPathNodeList) base;
 
@@ -676,16 +654,8 @@ public class XPathELResolver extends ELResolver {
 
     static Document getDummyDocument() {
         try {
-            if (dbf == null) {
-                dbf = DocumentBuilderFactory.newInstance();
-                dbf.setNamespaceAware(true);
-                dbf.setValidating(false);
-            }
-            db = dbf.newDocumentBuilder();
-
-            DOMImplementation dim = db.getDOMImplementation();
-            d = dim.createDocument("http://java.sun.com/jstl", "dummyroot", null);
-            return d;
+            DOMImplementation dim = getDocumentBuilder().getDOMImplementation();
+            return dim.createDocument("http://java.sun.com/jstl", "dummyroot", null);
         } catch (ParserConfigurationException | DOMException e) {
             log.log(Level.SEVERE, "getDummyDocument error.", e);
         }
@@ -694,21 +664,21 @@ public class XPathELResolver extends ELResolver {
 
     static Document getDummyDocumentWithoutRoot() {
         try {
-            if (dbf == null) {
-                dbf = DocumentBuilderFactory.newInstance();
-                dbf.setNamespaceAware(true);
-                dbf.setValidating(false);
-            }
-            db = dbf.newDocumentBuilder();
-
-            d = db.newDocument();
-            return d;
+            return getDocumentBuilder().newDocument();
         } catch (ParserConfigurationException e) {
             log.log(Level.SEVERE, "getDummyDocumentWithoutRoot error.", e);
         }
         return null;
     }
 
+    // a new builder for each dummy document, a builder kept per thread
+    // would pin the application class loader to the container threads
+    private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        }
+    }
+
     /**
      *
      * @param base
@@ -716,19 +686,11 @@ public class XPathELResolver extends ELResolver {
      * @return
      */
     protected Node adaptParamsForXalan(Object base, String xpath) {
-        Node boundDocument = null;
-        try {
-            Object varObject = base;
-            if (Class.forName("org.w3c.dom.Document").isInstance(varObject)) {
-                Document document = ((Document) varObject);
-                boundDocument = document;
-            } else if (Class.forName("org.w3c.dom.Node").isInstance(varObject)) {
-                boundDocument = (Node) varObject;
-            } else {
-                boundDocument = getDummyDocument();
-            }
-        } catch (ClassNotFoundException cnf) {
-            log.log(Level.SEVERE, "adaptParamsForXalan error.", cnf);
+        Node boundDocument;
+        if (base instanceof Node) {
+            boundDocument = (Node) base;
+        } else {
+            boundDocument = getDummyDocument();
         }
         return boundDocument;
     }
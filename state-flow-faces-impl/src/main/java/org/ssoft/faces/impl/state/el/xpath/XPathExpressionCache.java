@@ -0,0 +1,301 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.el.xpath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.el.ELContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * The compiled XPath expressions shared by all threads.
+ * <p>
+ * Neither {@link XPath} nor the compiled {@link XPathExpression} are thread
+ * safe, so an expression is evaluated by one thread at a time: each
+ * evaluation takes an idle compiled copy of the expression from the cache, or
+ * compiles a new one, and returns it when done. A compiled copy owns its
+ * XPath object, namespace context and variable resolver. The prefixes of an
+ * expression are resolved when it is compiled, so the expressions are keyed
+ * by their text, return type and the namespaces bound to the prefixes they
+ * use. The variables are resolved when an expression is evaluated, through
+ * the variable resolver of the copy bound to the current EL context.</p>
+ * <p>
+ * The cache holds no thread local state, it is bounded and released with the
+ * application class loader.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class XPathExpressionCache {
+
+    /**
+     * The maximum number of cached expressions.
+     */
+    static final int DEFAULT_SIZE = 256;
+
+    /**
+     * The maximum number of namespace bindings compiled for one expression.
+     */
+    private static final int MAX_VARIANTS = 4;
+
+    /**
+     * The maximum number of idle compiled copies of one expression.
+     */
+    private static final int MAX_IDLE = 8;
+
+    private static final String[] NO_PREFIXES = new String[0];
+
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+
+    private static final XPathExpressionCache INSTANCE = new XPathExpressionCache();
+
+    private final Map<Key, Compiled> entries;
+
+    private XPathExpressionCache() {
+        entries = new LinkedHashMap<Key, Compiled>(64, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Compiled> eldest) {
+                return size() > DEFAULT_SIZE;
+            }
+        };
+    }
+
+    /**
+     * @return the shared cache
+     */
+    static XPathExpressionCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Evaluate the expression, compiled at the first evaluation.
+     *
+     * @param context the EL context resolving the variables
+     * @param expression the XPath expression
+     * @param contextNode the context node
+     * @param document the document resolving the namespace prefixes
+     * @param returnType the return type
+     * @return the result of the expression
+     * @throws XPathExpressionException if the expression can not be compiled
+     * or evaluated
+     */
+    Object evaluate(ELContext context, String expression, Node contextNode,
+            Document document, QName returnType) throws XPathExpressionException {
+        Variant variant = lookup(expression, document, returnType);
+        // a copy evaluated again by a variable of its own evaluation is not
+        // idle, the nested evaluation takes another one
+        Copy copy = variant.poll();
+        if (copy == null) {
+            copy = new Copy(expression, document);
+        }
+        copy.variableResolver.setContext(context);
+        try {
+            return copy.compiled.evaluate(contextNode, returnType);
+        } finally {
+            copy.variableResolver.setContext(null);
+            variant.release(copy);
+        }
+    }
+
+    private Variant lookup(String expression, Document document,
+            QName returnType) throws XPathExpressionException {
+        Key key = new Key(expression, returnType);
+        Compiled entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Compiled(prefixes(expression));
+                entries.put(key, entry);
+            }
+        }
+
+        String[] namespaces = NO_PREFIXES;
+        if (entry.prefixes.length > 0) {
+            namespaces = new String[entry.prefixes.length];
+            JSTLXPathNamespaceContext namespaceContext = new JSTLXPathNamespaceContext(document);
+            for (int i = 0; i < namespaces.length; i++) {
+                namespaces[i] = namespaceContext.getNamespaceURI(entry.prefixes[i]);
+            }
+        }
+
+        synchronized (entry) {
+            for (Variant variant : entry.variants) {
+                if (Arrays.equals(variant.namespaces, namespaces)) {
+                    return variant;
+                }
+            }
+
+            Variant variant = new Variant(namespaces);
+            if (entry.variants.size() >= MAX_VARIANTS) {
+                entry.variants.remove(0);
+            }
+            entry.variants.add(variant);
+            return variant;
+        }
+    }
+
+    /**
+     * Collect the namespace prefixes of the qualified names, the axis names
+     * and the string literals are skipped.
+     */
+    private static String[] prefixes(String expression) {
+        List<String> result = null;
+        int length = expression.length();
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = expression.indexOf(c, i + 1);
+                if (end < 0) {
+                    break;
+                }
+                i = end;
+            } else if (c == ':') {
+                if (i + 1 < length && expression.charAt(i + 1) == ':') {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (start > 0 && isNameChar(expression.charAt(start - 1))) {
+                    start--;
+                }
+                if (start < i) {
+                    String prefix = expression.substring(start, i);
+                    if (result == null) {
+                        result = new ArrayList<>(2);
+                    }
+                    if (!result.contains(prefix)) {
+                        result.add(prefix);
+                    }
+                }
+            }
+        }
+        return result == null ? NO_PREFIXES : result.toArray(new String[result.size()]);
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    private static final class Key {
+
+        private final String expression;
+        private final QName returnType;
+
+        private Key(String expression, QName returnType) {
+            this.expression = expression;
+            this.returnType = returnType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expression.hashCode() + returnType.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return expression.equals(other.expression)
+                    && returnType.equals(other.returnType);
+        }
+
+    }
+
+    private static final class Compiled {
+
+        private final String[] prefixes;
+        private final List<Variant> variants = new ArrayList<>(1);
+
+        private Compiled(String[] prefixes) {
+            this.prefixes = prefixes;
+        }
+
+    }
+
+    private static final class Variant {
+
+        private final String[] namespaces;
+        private final Queue<Copy> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        private Variant(String[] namespaces) {
+            this.namespaces = namespaces;
+        }
+
+        private void release(Copy copy) {
+            if (idleCount.incrementAndGet() <= MAX_IDLE) {
+                idle.offer(copy);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+
+        private Copy poll() {
+            Copy copy = idle.poll();
+            if (copy != null) {
+                idleCount.decrementAndGet();
+            }
+            return copy;
+        }
+
+    }
+
+    /**
+     * An expression compiled for the use of one thread at a time.
+     */
+    private static final class Copy {
+
+        private final JSTLXPathVariableResolver variableResolver;
+        private final XPathExpression compiled;
+
+        private Copy(String expression, Document document) throws XPathExpressionException {
+            JSTLXPathNamespaceContext namespaceContext = new JSTLXPathNamespaceContext(document);
+            variableResolver = new JSTLXPathVariableResolver(null);
+            XPath xpath;
+            synchronized (XPATH_FACTORY) {
+                xpath = XPATH_FACTORY.newXPath();
+            }
+            xpath.setNamespaceContext(namespaceContext);
+            xpath.setXPathVariableResolver(variableResolver);
+            try {
+                compiled = xpath.compile(expression);
+            } finally {
+                // the compiled expression must not keep the document
+                namespaceContext.setDocument(null);
+            }
+        }
+
+    }
+
+}
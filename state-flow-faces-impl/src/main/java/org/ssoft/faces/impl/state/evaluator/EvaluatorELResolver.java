@@ -80,21 +80,26 @@ public class EvaluatorELResolver extends ELResolver implements Serializable {
                     break;
                 }
                 default: {
+                    String name = property.toString();
+                    // the mapped variables take precedence over the datamodel
+                    ValueExpression expression = variableMapper.resolveVariable(name);
+                    if (expression != null) {
+                        context.setPropertyResolved(true);
+                        result = expression.getValue(context);
+                        break;
+                    }
+
+                    // one walk up the context chain, a variable without
+                    // value is not resolved
                     Context ctx = (Context) context.getContext(Context.class);
-                    if (ctx != null && ctx.has(property.toString())) {
-                        Object value = ctx.get(property.toString());
+                    if (ctx != null) {
+                        Object value = ctx.get(name);
                         if (value != null) {
                             context.setPropertyResolved(true);
                             result = value;
                         }
                     }
 
-                    ValueExpression expression = variableMapper.resolveVariable(property.toString());
-                    if (expression != null) {
-                        context.setPropertyResolved(true);
-                        result = expression.getValue(context);
-                    }
-
                     break;
                 }
             }
@@ -56,6 +56,13 @@ public class EvaluatorVariableMapper extends VariableMapper {
         return null;
     }
 
+    /**
+     * @return true if any variable was set in this mapper
+     */
+    public boolean hasVariables() {
+        return vars != null && !vars.isEmpty();
+    }
+
     /**
      * @param name
      * @param expression
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.evaluator;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.el.ELContext;
+import javax.el.ExpressionFactory;
+import javax.el.ValueExpression;
+import javax.faces.FacesException;
+import javax.faces.state.scxml.model.SCXML;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_EXPRESSION_CACHE_SIZE_PARAM_NAME;
+import org.ssoft.faces.impl.state.config.StateWebConfiguration;
+
+/**
+ * The value expressions parsed from the expression strings of one state chart.
+ * <p>
+ * The cache is kept in the metadata of the chart, so it is shared by all
+ * executors of the chart and collected together with it. The expressions of a
+ * chart are a fixed set, when the limit is reached the further expressions are
+ * parsed without being cached.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class ExpressionCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The chart metadata key of the cache.
+     */
+    public static final String METADATA_KEY = "faces-expression-cache";
+
+    /**
+     * The default maximum number of cached expressions of one chart.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final ConcurrentMap<Key, ValueExpression> entries = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    /**
+     *
+     * @param maxSize the maximum number of cached expressions
+     */
+    public ExpressionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Attach new cache to the compiled chart, unless caching is disabled by
+     * the application init parameter.
+     *
+     * @param scxml the compiled state chart
+     */
+    public static void attach(SCXML scxml) {
+        int size = DEFAULT_SIZE;
+        StateWebConfiguration wcfg = StateWebConfiguration.getInstance();
+        String value = wcfg.getOptionValue(STATE_FLOW_EXPRESSION_CACHE_SIZE_PARAM_NAME);
+        if (value != null) {
+            try {
+                size = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+                throw new FacesException(String.format(
+                        "Invalid expression cache size \"%s\".", value), ex);
+            }
+        }
+        if (size > 0) {
+            scxml.getMetadata().put(METADATA_KEY, new ExpressionCache(size));
+        }
+    }
+
+    /**
+     * Return the cache attached to the chart.
+     *
+     * @param scxml the state chart
+     * @return the expression cache or <code>null</code>
+     */
+    public static ExpressionCache of(SCXML scxml) {
+        if (scxml == null) {
+            return null;
+        }
+        Object cache = scxml.getMetadata().get(METADATA_KEY);
+        return cache instanceof ExpressionCache ? (ExpressionCache) cache : null;
+    }
+
+    /**
+     * Return the cached expression or parse it.
+     *
+     * @param factory the expression factory
+     * @param context the context parsing the expression
+     * @param expr the expression string
+     * @param expectedType the expected type of the expression
+     * @return the parsed expression
+     */
+    public ValueExpression get(ExpressionFactory factory, ELContext context,
+            String expr, Class<?> expectedType) {
+        Key key = new Key(expr, expectedType);
+        ValueExpression ve = entries.get(key);
+        if (ve != null) {
+            return ve;
+        }
+
+        ve = factory.createValueExpression(context, expr, expectedType);
+        if (entries.size() < maxSize) {
+            ValueExpression cached = entries.putIfAbsent(key, ve);
+            if (cached != null) {
+                ve = cached;
+            }
+        }
+        return ve;
+    }
+
+    /**
+     *
+     * @return number of cached expressions
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String expr;
+        private final Class<?> expectedType;
+
+        private Key(String expr, Class<?> expectedType) {
+            this.expr = expr;
+            this.expectedType = expectedType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expr.hashCode() + expectedType.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return expectedType == other.expectedType
+                    && Objects.equals(expr, other.expr);
+        }
+
+    }
+
+}
@@ -23,6 +23,10 @@ import javax.el.ELResolver;
 import javax.el.FunctionMapper;
 import javax.el.VariableMapper;
 import javax.faces.context.FacesContext;
+import javax.faces.state.execute.ExecuteContext;
+import javax.faces.state.scxml.Context;
+import javax.faces.state.scxml.SCXMLExecutor;
+import javax.faces.state.scxml.model.SCXML;
 
 /**
  *
@@ -37,6 +41,10 @@ public class StateFlowELContext extends ELContext implements Serializable {
     private final CompositeELResolver elResolver;
     private final StateFlowEvaluator evaluator;
 
+    private transient boolean active;
+    private transient SCXML stateMachine;
+    private transient ExecuteContext executeContext;
+
     public StateFlowELContext(FacesContext facesContext, StateFlowEvaluator evaluator) {
         super();
         this.evaluator = evaluator;
@@ -65,6 +73,50 @@ public class StateFlowELContext extends ELContext implements Serializable {
         this.fnMapper.add(functionMapper);
     }
 
+    /**
+     * Mark this context used by an evaluation.
+     *
+     * @return false if this context is already used by an evaluation
+     */
+    public boolean acquire() {
+        if (active) {
+            return false;
+        }
+        active = true;
+        return true;
+    }
+
+    /**
+     * Set the state chart providing the builtin functions, the function
+     * mapper of the chart is kept until the chart changes.
+     *
+     * @param stateMachine the state chart or <code>null</code>
+     */
+    public void setStateMachine(SCXML stateMachine) {
+        if (this.stateMachine != stateMachine) {
+            fnMapper.reset();
+            if (stateMachine != null) {
+                fnMapper.add(new EvaluatorBuiltinFunctionMapper(this, stateMachine));
+            }
+            this.stateMachine = stateMachine;
+        }
+    }
+
+    /**
+     * @param executor the executor
+     * @param context the current context of the executor
+     * @return the execute context of the evaluation, reused while the
+     * executor and context do not change
+     */
+    public ExecuteContext getExecuteContext(SCXMLExecutor executor, Context context) {
+        ExecuteContext result = executeContext;
+        if (result == null || result.getExecutor() != executor || result.getContext() != context) {
+            result = new ExecuteContext(null, executor, context);
+            executeContext = result;
+        }
+        return result;
+    }
+
     @Override
     public VariableMapper getVariableMapper() {
         return this.varMapper;
@@ -75,9 +127,13 @@ public class StateFlowELContext extends ELContext implements Serializable {
         return elResolver;
     }
 
+    /**
+     * Release this context after an evaluation, the function mappers are kept
+     * for the next evaluation of the same chart.
+     */
     public void reset() {
         this.map.clear();
-        fnMapper.reset();
+        active = false;
     }
 
     @Override
@@ -16,7 +16,6 @@
 package org.ssoft.faces.impl.state.evaluator;
 
 import java.util.Map;
-import java.util.concurrent.Callable;
 import javax.el.ELContext;
 import javax.el.ExpressionFactory;
 import javax.el.MethodExpression;
@@ -31,13 +30,12 @@ import javax.faces.state.scxml.Context;
 import javax.faces.state.scxml.SCXMLExecutor;
 import javax.faces.state.scxml.SCXMLExpressionException;
 import javax.faces.state.scxml.env.AbstractBaseEvaluator;
+import javax.faces.state.scxml.env.EffectiveContextMap;
 import org.ssoft.faces.impl.state.utils.Util;
 import javax.faces.state.StateFlowHandler;
 import javax.faces.state.component.UIStateChartExecutor;
-import javax.faces.state.execute.ExecuteContext;
 import javax.faces.state.scxml.SCXMLIOProcessor;
 import javax.faces.state.scxml.SCXMLSystemContext;
-import javax.faces.state.scxml.env.EffectiveContextMap;
 import javax.faces.state.scxml.invoke.Invoker;
 import javax.faces.state.scxml.invoke.InvokerException;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.SCXML_DATA_MODEL;
@@ -60,7 +58,6 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
 
     public static final String FLOW_ISTANCE_KEY = "javax.faces.FLOW_CONTEXT_KEY".intern();
 
-    private transient StateFlowELContext ec;
     private transient ExpressionFactory expressionFactory;
     private transient ELContext elContext;
 
@@ -100,52 +97,66 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
         return false;
     }
 
-    private <V, T> V wrap(Context ctx, T expr, Callable<V> call) throws SCXMLExpressionException {
+    private <V, T> V wrap(Context ctx, T expr, Evaluation<V> call) throws SCXMLExpressionException {
         FacesContext fc = FacesContext.getCurrentInstance();
 
         if (expressionFactory == null) {
             expressionFactory = fc.getApplication().getExpressionFactory();
         }
-        String sessionId = (String) ctx.get(SCXMLSystemContext.SESSIONID_KEY);
 
-        ec = (StateFlowELContext) fc.getAttributes().get(this);
+        // one evaluation frame per request, nested evaluations get their own
+        Map<Object, Object> attrs = fc.getAttributes();
+        StateFlowELContext ec = (StateFlowELContext) attrs.get(this);
         if (ec == null) {
             ec = new StateFlowELContext(fc, this);
-            fc.getAttributes().put(this, ec);
+            attrs.put(this, ec);
+        }
+        if (!ec.acquire()) {
+            ec = new StateFlowELContext(fc, this);
+            ec.acquire();
         }
 
         ExecuteContextManager manager = ExecuteContextManager.getManager(fc);
         boolean pushed = false;
+        boolean hinted = false;
+        Object previousExecutor = null;
+        boolean disabled = attrs.containsKey(DISABLE_EXPRESSION_MAP);
 
         try {
+            String sessionId = (String) ctx.get(SCXMLSystemContext.SESSIONID_KEY);
             Map<String, SCXMLIOProcessor> ioProcessors = (Map<String, SCXMLIOProcessor>) ctx.get(SCXMLSystemContext.IOPROCESSORS_KEY);
-            if (ioProcessors.containsKey(SCXMLIOProcessor.SCXML_SESSION_EVENT_PROCESSOR_PREFIX + sessionId)) {
-                SCXMLExecutor executor = (SCXMLExecutor) ioProcessors.get(SCXMLIOProcessor.SCXML_SESSION_EVENT_PROCESSOR_PREFIX + sessionId);
-                fc.getAttributes().put(CURRENT_EXECUTOR_HINT, executor);
-                ec.putContext(SCXMLExecutor.class, executor);
-
-                ExecuteContext viewContext = new ExecuteContext(null, executor, ctx);
-                pushed = manager.push(viewContext);
+            SCXMLExecutor executor = (SCXMLExecutor) ioProcessors.get(SCXMLIOProcessor.SCXML_SESSION_EVENT_PROCESSOR_PREFIX + sessionId);
+            if (executor != null) {
+                previousExecutor = attrs.put(CURRENT_EXECUTOR_HINT, executor);
+                hinted = true;
+                pushed = manager.push(ec.getExecuteContext(executor, ctx));
 
                 ec.putContext(SCXMLExecutor.class, executor);
-                SCXML scxml = executor.getStateMachine();
-                ec.addFunctionMaper(new EvaluatorBuiltinFunctionMapper(ec, scxml));
+                ec.setStateMachine(executor.getStateMachine());
+            } else {
+                ec.setStateMachine(null);
             }
 
-            ctx = getEffectiveContext(ctx);
-
-            fc.getAttributes().put(DISABLE_EXPRESSION_MAP, true);
+            if (!disabled) {
+                attrs.put(DISABLE_EXPRESSION_MAP, true);
+            }
             ec.putContext(Context.class, ctx);
             ec.putContext(FacesContext.class, fc);
-            return call.call();
+            return call.evaluate(ec);
         } catch (NullPointerException ex) {
             throw new SCXMLExpressionException(String.format("%s error: null pointer exception", expr.toString()), ex);
         } catch (Exception ex) {
             throw new SCXMLExpressionException(String.format("%s error: %s", expr.toString(), Util.getErrorMessage(ex)), ex);
         } finally {
             ec.reset();
-            fc.getAttributes().remove(CURRENT_EXECUTOR_HINT);
-            fc.getAttributes().remove(DISABLE_EXPRESSION_MAP);
+            if (previousExecutor != null) {
+                attrs.put(CURRENT_EXECUTOR_HINT, previousExecutor);
+            } else if (hinted) {
+                attrs.remove(CURRENT_EXECUTOR_HINT);
+            }
+            if (!disabled) {
+                attrs.remove(DISABLE_EXPRESSION_MAP);
+            }
             if (pushed) {
                 manager.pop();
             }
@@ -156,9 +167,24 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
         return expr;
     }
 
+    /**
+     * Parse the expression string, the expressions of a chart are parsed once
+     * unless they may use the variables of the variable mapper, which are
+     * bound when the expression is parsed.
+     */
+    private ValueExpression createValueExpression(StateFlowELContext ec, String expr) {
+        SCXMLExecutor executor = (SCXMLExecutor) ec.getContext(SCXMLExecutor.class);
+        EvaluatorVariableMapper varMapper = (EvaluatorVariableMapper) ec.getVariableMapper();
+        ExpressionCache cache = executor != null ? ExpressionCache.of(executor.getStateMachine()) : null;
+        if (cache == null || varMapper.hasVariables()) {
+            return getExpressionFactory().createValueExpression(ec, expr, Object.class);
+        }
+        return cache.get(getExpressionFactory(), ec, expr, Object.class);
+    }
+
     @Override
     public void evalAssign(Context ctx, ValueExpression location, Object data) throws SCXMLExpressionException {
-        wrap(ctx, location, () -> {
+        wrap(ctx, location, (ec) -> {
             if (location.isLiteralText()) {
                 String name = (String) location.getValue(ec);
                 if (data != null) {
@@ -215,7 +241,7 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
 
     @Override
     public ValueExpression setVariable(Context ctx, String variable, ValueExpression expression) throws SCXMLExpressionException {
-        return wrap(ctx, expression, () -> {
+        return wrap(ctx, expression, (ec) -> {
             if (variable != null) {
                 return ec.getVariableMapper().setVariable(variable, expression);
             }
@@ -225,15 +251,15 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
 
     @Override
     public Object eval(Context ctx, String expr) throws SCXMLExpressionException {
-        return wrap(ctx, expr, () -> {
-            ValueExpression ve = getExpressionFactory().createValueExpression(ec, resolve(ctx, expr), Object.class);
+        return wrap(ctx, expr, (ec) -> {
+            ValueExpression ve = createValueExpression(ec, resolve(ctx, expr));
             return ve.getValue(ec);
         });
     }
 
     @Override
     public Object eval(Context ctx, ValueExpression expr) throws SCXMLExpressionException {
-        return wrap(ctx, expr, () -> {
+        return wrap(ctx, expr, (ec) -> {
             ValueExpression ve = expr;
             return ve.getValue(ec);
         });
@@ -241,7 +267,7 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
 
     @Override
     public Boolean evalCond(Context ctx, ValueExpression expr) throws SCXMLExpressionException {
-        return wrap(ctx, expr, () -> {
+        return wrap(ctx, expr, (ec) -> {
             ValueExpression ve = expr;
             return (Boolean) ve.getValue(ec);
         });
@@ -249,7 +275,7 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
 
     @Override
     public Object evalMethod(Context ctx, MethodExpression expr, Object[] param) throws SCXMLExpressionException {
-        return wrap(ctx, expr, () -> {
+        return wrap(ctx, expr, (ec) -> {
             MethodExpression me = expr;
             return me.invoke(ec, param);
         });
@@ -257,8 +283,8 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
 
     @Override
     public Object evalScript(Context ctx, String script) throws SCXMLExpressionException {
-        return wrap(ctx, script, () -> {
-            ValueExpression ve = getExpressionFactory().createValueExpression(ec, resolve(ctx, script), Object.class);
+        return wrap(ctx, script, (ec) -> {
+            ValueExpression ve = createValueExpression(ec, resolve(ctx, script));
             return ve.getValue(ec);
         });
     }
@@ -272,7 +298,11 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
      *
      * @param nodeCtx
      * @return
+     * @deprecated the expressions are evaluated directly against the state
+     * context, whose lookups walk the context chain; this context view is
+     * no longer used by the evaluator
      */
+    @Deprecated
     protected StateFlowContext getEffectiveContext(final Context nodeCtx) {
         return new StateFlowContext(nodeCtx, new EffectiveContextMap(nodeCtx));
     }
@@ -313,4 +343,14 @@ public class StateFlowEvaluator extends AbstractBaseEvaluator {
         return uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
     }
 
+    /**
+     * An evaluation run in the evaluation context.
+     */
+    @FunctionalInterface
+    private interface Evaluation<V> {
+
+        V evaluate(StateFlowELContext ec) throws Exception;
+
+    }
+
 }
@@ -18,19 +18,12 @@ package org.ssoft.faces.impl.state.facelets;
 import com.sun.faces.renderkit.RenderKitUtils;
 import static com.sun.faces.util.RequestStateManager.FACES_VIEW_STATE;
 import java.io.IOException;
-import java.util.EnumSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Logger;
 import javax.faces.FacesException;
 import javax.faces.application.ViewHandler;
-import javax.faces.component.UIComponent;
 import javax.faces.component.UIViewRoot;
-import javax.faces.component.visit.VisitContext;
-import javax.faces.component.visit.VisitHint;
-import javax.faces.component.visit.VisitResult;
 import javax.faces.context.FacesContext;
 import javax.faces.event.PhaseId;
 import javax.faces.render.ResponseStateManager;
@@ -58,6 +51,7 @@ import org.ssoft.faces.impl.state.config.StateWebConfiguration;
 import static org.ssoft.faces.impl.state.StateFlowImplConstants.ORGINAL_SCXML_SUFIX;
 import org.ssoft.faces.impl.state.el.ExecuteExpressionFactory;
 import org.ssoft.faces.impl.state.log.FlowLogger;
+import org.ssoft.faces.impl.state.utils.Util;
 import static javax.faces.state.StateFlow.FACES_VIEW_ROOT_EXECUTOR_ID;
 
 /**
@@ -189,39 +183,19 @@ public class StateFlowViewDeclarationLanguage extends ViewDeclarationLanguageWra
             }
         }
 
-        List<String> clientIds = handler.getControllerClientIds(fc);
-        if (clientIds != null && !clientIds.isEmpty()) {
-            Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-            VisitContext visitContext = VisitContext.createVisitContext(fc, clientIds, hints);
-            viewRoot.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                if (target instanceof UIStateChartExecutor) {
-                    UIStateChartExecutor controller = (UIStateChartExecutor) target;
-                    String controllerId = controller.getClientId(fc);
-
+        Util.visitControllers(fc, (UIStateChartExecutor controller, SCXMLExecutor rexecutor) -> {
+            try {
+                EventDispatcher ed = rexecutor.getEventdispatcher();
+                if (ed instanceof FacesProcessHolder) {
                     EventBuilder veb = new EventBuilder(AFTER_BUILD_VIEW, TriggerEvent.CALL_EVENT)
                             .sendId(viewRoot.getViewId());
 
-                    SCXMLExecutor rexecutor = null;
-                    String cexecutorId = controller.getExecutorId();
-                    if (cexecutorId != null) {
-                        rexecutor = handler.getRootExecutor(fc, cexecutorId);
-                    }
-
-                    if (rexecutor != null) {
-                        try {
-                            EventDispatcher ed = rexecutor.getEventdispatcher();
-                            if (ed instanceof FacesProcessHolder) {
-                                rexecutor.triggerEvent(veb.build());
-                            }
-                        } catch (ModelException ex) {
-                            throw new FacesException(ex);
-                        }
-                    }
-
+                    rexecutor.triggerEvent(veb.build());
                 }
-                return VisitResult.ACCEPT;
-            });
-        }
+            } catch (ModelException ex) {
+                throw new FacesException(ex);
+            }
+        });
     }
 
     @Override
@@ -246,41 +220,21 @@ public class StateFlowViewDeclarationLanguage extends ViewDeclarationLanguageWra
             }
         }
 
-        List<String> clientIds = handler.getControllerClientIds(fc);
-        if (clientIds != null && !clientIds.isEmpty()) {
-            Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-            VisitContext visitContext = VisitContext.createVisitContext(fc, clientIds, hints);
-            viewRoot.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                if (target instanceof UIStateChartExecutor) {
-                    UIStateChartExecutor controller = (UIStateChartExecutor) target;
-                    String controllerId = controller.getClientId(fc);
-
+        Util.visitControllers(fc, (UIStateChartExecutor controller, SCXMLExecutor executor) -> {
+            try {
+                EventDispatcher ed = executor.getEventdispatcher();
+                if (ed instanceof FacesProcessHolder) {
                     EventBuilder veb = new EventBuilder(ENCODE_DISPATCHER_EVENTS, TriggerEvent.CALL_EVENT)
                             .sendId(viewRoot.getViewId());
 
-                    SCXMLExecutor executor = null;
-                    String executorId = controller.getExecutorId();
-                    if (executorId != null) {
-                        executor = handler.getRootExecutor(fc, executorId);
-                    }
-
-                    if (executor != null) {
-                        try {
-                            EventDispatcher ed = executor.getEventdispatcher();
-                            if (ed instanceof FacesProcessHolder) {
-                                executor.triggerEvent(veb.build());
-                                ((FacesProcessHolder) ed).encodeBegin(fc);
-                                ((FacesProcessHolder) ed).encodeEnd(fc);
-                            }
-                        } catch (ModelException | IOException ex) {
-                            throw new FacesException(ex);
-                        }
-                    }
-
+                    executor.triggerEvent(veb.build());
+                    ((FacesProcessHolder) ed).encodeBegin(fc);
+                    ((FacesProcessHolder) ed).encodeEnd(fc);
                 }
-                return VisitResult.ACCEPT;
-            });
-        }
+            } catch (ModelException | IOException ex) {
+                throw new FacesException(ex);
+            }
+        });
         super.renderView(fc, viewRoot);
     }
 
@@ -16,20 +16,16 @@
 package org.ssoft.faces.impl.state.listener;
 
 import java.util.ArrayList;
-import java.util.EnumSet;
 import java.util.List;
-import java.util.Set;
 import javax.faces.FacesException;
 import javax.faces.component.UIComponent;
 import javax.faces.component.UIViewRoot;
-import javax.faces.component.visit.VisitContext;
-import javax.faces.component.visit.VisitHint;
-import javax.faces.component.visit.VisitResult;
 import javax.faces.context.FacesContext;
 import javax.faces.event.AbortProcessingException;
 import javax.faces.event.PhaseId;
 import javax.faces.event.PostAddToViewEvent;
 import javax.faces.event.PostRestoreStateEvent;
+import javax.faces.event.PreRemoveFromViewEvent;
 import javax.faces.event.PreRenderViewEvent;
 import javax.faces.event.SystemEvent;
 import javax.faces.event.SystemEventListener;
@@ -42,6 +38,7 @@ import javax.faces.state.scxml.EventBuilder;
 import javax.faces.state.scxml.SCXMLExecutor;
 import javax.faces.state.scxml.TriggerEvent;
 import javax.faces.state.scxml.model.ModelException;
+import org.ssoft.faces.impl.state.utils.Util;
 
 /**
  *
@@ -72,75 +69,58 @@ public class StateFlowControllerListener implements SystemEventListener {
             if (!clientIds.contains(clientId)) {
                 clientIds.add(clientId);
             }
+
+            String executorId = component.getExecutorId();
+            if (executorId != null) {
+                List<String> executorIds = Util.getControllerExecutorIds(root, true);
+                if (!executorIds.contains(executorId)) {
+                    executorIds.add(executorId);
+                }
+            }
+        }
+
+        if (cse instanceof PreRemoveFromViewEvent) {
+            if (clientIds != null) {
+                clientIds.remove(clientId);
+            }
+
+            String executorId = component.getExecutorId();
+            List<String> executorIds = root != null
+                    ? Util.getControllerExecutorIds(root, false) : null;
+            if (executorId != null && executorIds != null) {
+                executorIds.remove(executorId);
+            }
+            return;
         }
 
         if (root != null && clientIds != null && !clientIds.isEmpty()) {
 
+            String eventName;
             if (cse instanceof PostRestoreStateEvent) {
-
-                String eventName = BEFORE_PHASE_EVENT_PREFIX
+                eventName = BEFORE_PHASE_EVENT_PREFIX
                         + PhaseId.RESTORE_VIEW.getName().toLowerCase();
 
-                Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-                VisitContext visitContext = VisitContext.createVisitContext(facesContext, clientIds, hints);
-                root.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                    if (target instanceof UIStateChartExecutor) {
-                        UIStateChartExecutor controller = (UIStateChartExecutor) target;
-                        String controllerId = controller.getClientId(facesContext);
-
-                        EventBuilder eb = new EventBuilder(eventName, TriggerEvent.CALL_EVENT)
-                                .sendId(controllerId);
-                        
-                        SCXMLExecutor executor = null;
-                        String executorId = controller.getExecutorId();
-                        
-                        if(executorId != null) {
-                            executor = handler.getRootExecutor(facesContext, executorId);
-                        }
-
-                        if (executor != null) {
-                            try {
-                                executor.triggerEvent(eb.build());
-                            } catch (ModelException ex) {
-                                throw new FacesException(ex);
-                            }
-                        }
-                    }
-                    return VisitResult.ACCEPT;
-                });
+                if (!handler.canControllersConsumeEvent(facesContext, eventName)) {
+                    return;
+                }
             } else if (cse instanceof PreRenderViewEvent) {
-
-                String eventName = ENCODE_DISPATCHER_EVENTS;
-
-                Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-                VisitContext visitContext = VisitContext.createVisitContext(facesContext, clientIds, hints);
-                root.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                    if (target instanceof UIStateChartExecutor) {
-                        UIStateChartExecutor controller = (UIStateChartExecutor) target;
-                        String controllerId = controller.getClientId(facesContext);
-
-                        EventBuilder eb = new EventBuilder(eventName, TriggerEvent.CALL_EVENT)
-                                .sendId(controllerId);
-
-                        SCXMLExecutor executor = null;
-                        String executorId = controller.getExecutorId();
-                        
-                        if(executorId != null) {
-                            executor = handler.getRootExecutor(facesContext, executorId);
-                        }
-
-                        if (executor != null) {
-                            try {
-                                executor.triggerEvent(eb.build());
-                            } catch (ModelException ex) {
-                                throw new FacesException(ex);
-                            }
-                        }
-                    }
-                    return VisitResult.ACCEPT;
-                });
+                eventName = ENCODE_DISPATCHER_EVENTS;
+            } else {
+                return;
             }
 
+            Util.visitControllers(facesContext, (UIStateChartExecutor controller, SCXMLExecutor executor) -> {
+                String controllerId = controller.getClientId(facesContext);
+
+                EventBuilder eb = new EventBuilder(eventName, TriggerEvent.CALL_EVENT)
+                        .sendId(controllerId);
+                try {
+                    executor.triggerEvent(eb.build());
+                } catch (ModelException ex) {
+                    throw new FacesException(ex);
+                }
+            });
+
         }
     }
 
@@ -20,10 +20,8 @@ import com.sun.faces.renderkit.RenderKitUtils;
 import static com.sun.faces.util.RequestStateManager.FACES_VIEW_STATE;
 import java.io.IOException;
 import java.util.Collections;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -31,11 +29,7 @@ import java.util.logging.Logger;
 import javax.faces.FacesException;
 import javax.faces.application.StateManager;
 import javax.faces.application.ViewHandler;
-import javax.faces.component.UIComponent;
 import javax.faces.component.UIViewRoot;
-import javax.faces.component.visit.VisitContext;
-import javax.faces.component.visit.VisitHint;
-import javax.faces.component.visit.VisitResult;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.context.Flash;
@@ -48,6 +42,8 @@ import javax.faces.state.scxml.SCXMLExecutor;
 import javax.faces.state.StateFlowHandler;
 import javax.faces.state.scxml.model.SCXML;
 import org.ssoft.faces.impl.state.StateFlowParams;
+import org.ssoft.faces.impl.state.utils.Util;
+import javax.faces.state.component.UIStateChartExecutor;
 import static javax.faces.state.StateFlow.AFTER_PHASE_EVENT_PREFIX;
 import static javax.faces.state.StateFlow.BEFORE_PHASE_EVENT_PREFIX;
 import static javax.faces.state.StateFlow.SKIP_START_STATE_MACHINE_HINT;
@@ -58,7 +54,6 @@ import javax.faces.state.scxml.EventDispatcher;
 import javax.faces.state.scxml.TriggerEvent;
 import javax.faces.state.scxml.model.ModelException;
 import static javax.faces.state.StateFlow.DECODE_DISPATCHER_EVENTS;
-import javax.faces.state.component.UIStateChartExecutor;
 import static javax.faces.state.StateFlow.VIEWROOT_CONTROLLER_TYPE;
 import static javax.faces.state.StateFlow.FACES_CHART_CONTROLLER_TYPE;
 import static javax.faces.state.StateFlow.FACES_CHART_EXECUTOR_VIEW_ID;
@@ -88,45 +83,30 @@ public class StateFlowPhaseListener implements PhaseListener {
             String name = AFTER_PHASE_EVENT_PREFIX
                     + event.getPhaseId().getName().toLowerCase();
 
-            EventBuilder eb = new EventBuilder(name, TriggerEvent.CALL_EVENT)
-                    .sendId(fc.getViewRoot().getViewId());
-            
             if (handler.hasViewRoot(fc)) {
                 SCXMLExecutor executor = handler.getViewRootExecutor(fc);
-                try {
-                    executor.triggerEvent(eb.build());
-                } catch (ModelException ex) {
-                    throw new FacesException(ex);
+                if (executor.canConsumeEvent(name)) {
+                    EventBuilder eb = new EventBuilder(name, TriggerEvent.CALL_EVENT)
+                            .sendId(fc.getViewRoot().getViewId());
+                    try {
+                        executor.triggerEvent(eb.build());
+                    } catch (ModelException ex) {
+                        throw new FacesException(ex);
+                    }
                 }
             }
 
-            List<String> clientIds = handler.getControllerClientIds(fc);
-            if (clientIds != null && !clientIds.isEmpty()) {
-                Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-                VisitContext visitContext = VisitContext.createVisitContext(fc, clientIds, hints);
-                viewRoot.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                    if (target instanceof UIStateChartExecutor) {
-                        UIStateChartExecutor controller = (UIStateChartExecutor) target;
-
+            if (handler.canControllersConsumeEvent(fc, name)) {
+                Util.visitControllers(fc, (UIStateChartExecutor controller, SCXMLExecutor executor) -> {
+                    if (executor.canConsumeEvent(name)) {
                         EventBuilder veb = new EventBuilder(name, TriggerEvent.CALL_EVENT)
                                 .sendId(viewRoot.getViewId());
-
-                        SCXMLExecutor executor = null;
-                        String executorId = controller.getExecutorId();
-                        if (executorId != null) {
-                            executor = handler.getRootExecutor(fc, executorId);
-                        }
-
-                        if (executor != null) {
-                            try {
-                                executor.triggerEvent(veb.build());
-                            } catch (ModelException ex) {
-                                throw new FacesException(ex);
-                            }
+                        try {
+                            executor.triggerEvent(veb.build());
+                        } catch (ModelException ex) {
+                            throw new FacesException(ex);
                         }
-
                     }
-                    return VisitResult.ACCEPT;
                 });
             }
 
@@ -157,14 +137,15 @@ public class StateFlowPhaseListener implements PhaseListener {
 
                 if (handler.hasViewRoot(fc)) {
 
-                    EventBuilder eb = new EventBuilder(name, TriggerEvent.CALL_EVENT)
-                            .sendId(viewRoot.getViewId());
-
                     SCXMLExecutor executor = handler.getViewRootExecutor(fc);
-                    try {
-                        executor.triggerEvent(eb.build());
-                    } catch (ModelException ex) {
-                        throw new FacesException(ex);
+                    if (executor.canConsumeEvent(name)) {
+                        EventBuilder eb = new EventBuilder(name, TriggerEvent.CALL_EVENT)
+                                .sendId(viewRoot.getViewId());
+                        try {
+                            executor.triggerEvent(eb.build());
+                        } catch (ModelException ex) {
+                            throw new FacesException(ex);
+                        }
                     }
 
                     if (event.getPhaseId() == PhaseId.APPLY_REQUEST_VALUES
@@ -186,52 +167,41 @@ public class StateFlowPhaseListener implements PhaseListener {
 
                 }
 
-                List<String> clientIds = handler.getControllerClientIds(fc);
-                if (clientIds != null && !clientIds.isEmpty()) {
-                    Set<VisitHint> hints = EnumSet.of(VisitHint.SKIP_ITERATION);
-                    VisitContext visitContext = VisitContext.createVisitContext(fc, clientIds, hints);
-                    viewRoot.visitTree(visitContext, (VisitContext context, UIComponent target) -> {
-                        if (target instanceof UIStateChartExecutor) {
-                            UIStateChartExecutor controller = (UIStateChartExecutor) target;
-                            String controllerId = controller.getClientId(fc);
+                // decoding of the controller dispatchers needs the controllers
+                // even if no controller chart consumes the phase event
+                boolean decode = event.getPhaseId() == PhaseId.APPLY_REQUEST_VALUES
+                        && !fc.getResponseComplete();
 
+                if (decode || handler.canControllersConsumeEvent(fc, name)) {
+                    Util.visitControllers(fc, (UIStateChartExecutor controller, SCXMLExecutor executor) -> {
+                        if (executor.canConsumeEvent(name)) {
                             EventBuilder eb = new EventBuilder(name, TriggerEvent.CALL_EVENT)
                                     .sendId(viewRoot.getViewId());
-
-                            SCXMLExecutor executor = null;
-                            String executorId = controller.getExecutorId();
-                            if (executorId != null) {
-                                executor = handler.getRootExecutor(fc, executorId);
+                            try {
+                                executor.triggerEvent(eb.build());
+                            } catch (ModelException ex) {
+                                throw new FacesException(ex);
                             }
+                        }
 
-                            if (executor != null) {
+                        if (event.getPhaseId() == PhaseId.APPLY_REQUEST_VALUES
+                                && !fc.getResponseComplete()) {
+
+                            EventDispatcher ed = executor.getEventdispatcher();
+                            if (ed instanceof FacesProcessHolder) {
                                 try {
-                                    executor.triggerEvent(eb.build());
+                                    EventBuilder eeb = new EventBuilder(
+                                            DECODE_DISPATCHER_EVENTS,
+                                            TriggerEvent.CALL_EVENT)
+                                            .sendId(viewRoot.getViewId());
+
+                                    executor.triggerEvent(eeb.build());
+                                    ((FacesProcessHolder) ed).processDecodes(fc);
                                 } catch (ModelException ex) {
                                     throw new FacesException(ex);
                                 }
-
-                                if (event.getPhaseId() == PhaseId.APPLY_REQUEST_VALUES
-                                        && !fc.getResponseComplete()) {
-
-                                    EventDispatcher ed = executor.getEventdispatcher();
-                                    if (ed instanceof FacesProcessHolder) {
-                                        try {
-                                            EventBuilder eeb = new EventBuilder(
-                                                    DECODE_DISPATCHER_EVENTS,
-                                                    TriggerEvent.CALL_EVENT)
-                                                    .sendId(viewRoot.getViewId());
-
-                                            executor.triggerEvent(eeb.build());
-                                            ((FacesProcessHolder) ed).processDecodes(fc);
-                                        } catch (ModelException ex) {
-                                            throw new FacesException(ex);
-                                        }
-                                    }
-                                }
                             }
                         }
-                        return VisitResult.ACCEPT;
                     });
                 }
 
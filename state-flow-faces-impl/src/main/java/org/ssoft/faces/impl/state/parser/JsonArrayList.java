@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.parser;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import javax.faces.state.scxml.Evaluator;
+import javax.faces.state.scxml.env.Copyable;
+
+/**
+ * The list of a parsed JSON array, mapped from its node when the elements are
+ * first read like the {@link JsonObjectMap}.
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class JsonArrayList extends AbstractList<Object>
+        implements RandomAccess, Copyable, JsonSerializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient ArrayNode node;
+
+    private transient volatile List<Object> values;
+
+    JsonArrayList(ArrayNode node) {
+        this.node = node;
+    }
+
+    private JsonArrayList(List<Object> values) {
+        this.values = values;
+    }
+
+    private List<Object> mapped() {
+        List<Object> mapped = values;
+        if (mapped == null) {
+            List<Object> list = new ArrayList<>(node.size());
+            for (JsonNode element : node) {
+                list.add(JsonNodes.toValue(element));
+            }
+            values = list;
+            return list;
+        }
+        return mapped;
+    }
+
+    @Override
+    public int size() {
+        return values == null ? node.size() : values.size();
+    }
+
+    @Override
+    public Object get(int index) {
+        return mapped().get(index);
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        return mapped().set(index, element);
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        mapped().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public Object remove(int index) {
+        Object result = mapped().remove(index);
+        modCount++;
+        return result;
+    }
+
+    @Override
+    public Object copy(Evaluator evaluator) {
+        if (values == null) {
+            return new JsonArrayList(node);
+        }
+        List<Object> list = new ArrayList<>(values.size());
+        for (Object value : values) {
+            list.add(evaluator.cloneData(value));
+        }
+        return new JsonArrayList(list);
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        if (values == null) {
+            gen.writeTree(node);
+            return;
+        }
+        gen.writeStartArray();
+        for (Object value : values) {
+            serializers.defaultSerializeValue(value, gen);
+        }
+        gen.writeEndArray();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+            TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    // an unmapped view is written as the JSON of its node, the mapped
+    // values may hold any values assigned since and keep their types
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        List<Object> mapped = values;
+        out.writeBoolean(mapped != null);
+        if (mapped != null) {
+            out.writeObject(mapped);
+        } else {
+            JsonNodes.write(out, node);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (in.readBoolean()) {
+            values = (List<Object>) in.readObject();
+        } else {
+            node = (ArrayNode) JsonNodes.read(in);
+        }
+    }
+
+}
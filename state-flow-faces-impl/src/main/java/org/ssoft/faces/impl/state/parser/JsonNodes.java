@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Conversion of the parsed JSON trees to the datamodel values.
+ * <p>
+ * The objects and arrays of a tree are returned as {@link JsonObjectMap} and
+ * {@link JsonArrayList} views, the scalars as the Java values the data binding
+ * of Jackson maps them to. The trees are never modified, the views copy the
+ * nodes of one level when they are first read.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class JsonNodes {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private JsonNodes() {
+    }
+
+    /**
+     * @param node the JSON node
+     * @return the datamodel value of the node
+     */
+    static Object toValue(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        switch (node.getNodeType()) {
+            case OBJECT:
+                return new JsonObjectMap((ObjectNode) node);
+            case ARRAY:
+                return new JsonArrayList((ArrayNode) node);
+            case STRING:
+                return node.textValue();
+            case NUMBER:
+                return node.numberValue();
+            case BOOLEAN:
+                return node.booleanValue();
+            default:
+                return node.asText();
+        }
+    }
+
+    /**
+     * Write the tree as UTF-8 encoded JSON.
+     *
+     * @param out the stream
+     * @param node the JSON tree
+     * @throws IOException if the tree can not be written
+     */
+    static void write(ObjectOutputStream out, JsonNode node) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(node);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read the tree written by {@link #write(ObjectOutputStream, JsonNode)}.
+     *
+     * @param in the stream
+     * @return the JSON tree
+     * @throws IOException if the tree can not be read
+     */
+    static JsonNode read(ObjectInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return MAPPER.readTree(bytes);
+    }
+
+}
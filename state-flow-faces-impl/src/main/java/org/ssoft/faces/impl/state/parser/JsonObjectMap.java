@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.parser;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.faces.state.scxml.Evaluator;
+import javax.faces.state.scxml.env.Copyable;
+
+/**
+ * The map of a parsed JSON object.
+ * <p>
+ * Until the entries are read the map is a view of the object node, its copy
+ * shares the node. The first read of an entry maps the fields of the node to a
+ * map, the nested objects and arrays to views of their nodes, so only the
+ * levels of the tree on the path of the read values are ever mapped. A copy
+ * of a mapped map copies its entries, the nested views not read share their
+ * nodes.</p>
+ * <p>
+ * The node is never modified, so the unmodified map of the parsed content of a
+ * state chart may be read and copied by several threads. An unmapped map is
+ * serialized as the JSON of its node, a mapped map by the Java serialization
+ * of its entries.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+final class JsonObjectMap extends AbstractMap<String, Object>
+        implements Copyable, JsonSerializable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient ObjectNode node;
+
+    private transient volatile Map<String, Object> values;
+
+    JsonObjectMap(ObjectNode node) {
+        this.node = node;
+    }
+
+    private JsonObjectMap(Map<String, Object> values) {
+        this.values = values;
+    }
+
+    private Map<String, Object> mapped() {
+        Map<String, Object> mapped = values;
+        if (mapped == null) {
+            Map<String, Object> map = new LinkedHashMap<>(Math.max(4, (int) (node.size() / .75f) + 1));
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                map.put(field.getKey(), JsonNodes.toValue(field.getValue()));
+            }
+            values = map;
+            return map;
+        }
+        return mapped;
+    }
+
+    @Override
+    public int size() {
+        return values == null ? node.size() : values.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (values == null) {
+            return key instanceof String && node.has((String) key);
+        }
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return mapped().get(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return mapped().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return mapped().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        mapped().clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return mapped().entrySet();
+    }
+
+    @Override
+    public Object copy(Evaluator evaluator) {
+        if (values == null) {
+            return new JsonObjectMap(node);
+        }
+        Map<String, Object> map = new LinkedHashMap<>(Math.max(4, (int) (values.size() / .75f) + 1));
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            map.put(entry.getKey(), evaluator.cloneData(entry.getValue()));
+        }
+        return new JsonObjectMap(map);
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        if (values == null) {
+            gen.writeTree(node);
+            return;
+        }
+        gen.writeStartObject();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            gen.writeFieldName(entry.getKey());
+            serializers.defaultSerializeValue(entry.getValue(), gen);
+        }
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+            TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+
+    // an unmapped view is written as the JSON of its node, the mapped
+    // values may hold any values assigned since and keep their types
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Map<String, Object> mapped = values;
+        out.writeBoolean(mapped != null);
+        if (mapped != null) {
+            out.writeObject(mapped);
+        } else {
+            JsonNodes.write(out, node);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (in.readBoolean()) {
+            values = (Map<String, Object>) in.readObject();
+        } else {
+            node = (ObjectNode) JsonNodes.read(in);
+        }
+    }
+
+}
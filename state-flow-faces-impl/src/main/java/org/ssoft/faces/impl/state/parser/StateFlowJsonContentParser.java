@@ -67,15 +67,16 @@ public class StateFlowJsonContentParser extends ContentParser {
     
     
     /**
-     * Parse and map JSON string to 'raw' Java Objects: object -> LinkedHashMap,
-     * array -> ArrayList
+     * Parse JSON string to a tree and map it to Java Objects: object -> Map,
+     * array -> List. The nested objects and arrays are mapped from the tree
+     * when first read.
      *
      * @param jsonString JSON string to parse
-     * @return 'raw' mapped Java Object for JSON string
+     * @return mapped Java Object for JSON string
      * @throws IOException In case of parsing exceptions
      */
     public Object parseJson(final String jsonString) throws IOException {
-        return jsonObjectMapper.readValue(jsonString, Object.class);
+        return JsonNodes.toValue(jsonObjectMapper.readTree(jsonString));
     }
 
     /**
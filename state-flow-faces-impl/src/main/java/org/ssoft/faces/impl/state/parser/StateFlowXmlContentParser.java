@@ -16,14 +16,11 @@
 package org.ssoft.faces.impl.state.parser;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Properties;
 import javax.faces.state.scxml.io.ContentParser;
 import javax.faces.state.scxml.model.NodeValue;
 import javax.faces.state.scxml.model.ParsedValue;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -33,8 +30,6 @@ import javax.xml.transform.stream.StreamResult;
 import org.kohsuke.MetaInfServices;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  *
@@ -79,13 +74,7 @@ public class StateFlowXmlContentParser extends ContentParser {
      * @throws IOException
      */
     public Node parseXml(final String xmlString) throws IOException {
-        Document doc;
-        try {
-            InputSource is = new InputSource(new StringReader(xmlString));
-            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
-        } catch (SAXException | ParserConfigurationException e) {
-            throw new IOException(e);
-        }
+        Document doc = XmlDocumentParser.parse(xmlString);
         return doc != null ? doc.getDocumentElement() : null;
     }
     
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * The XML parser shared by the content parsers of all state charts.
+ * <p>
+ * The document builders are created once from a factory configured to not
+ * resolve external entities and DTDs, and are reused from a bounded pool.
+ * Small documents without a DOCTYPE are read by a StAX reader straight into a
+ * new document, avoiding the setup of a full parser for each payload. Both
+ * paths build the same tree as the non namespace aware DOM parser used before:
+ * the element and attribute names are the qualified names of the source and
+ * the namespace declarations are kept as attributes. A document the StAX
+ * reader rejects is parsed again by the DOM parser, which reports the
+ * error.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class XmlDocumentParser {
+
+    /**
+     * The maximum length of a document read by the StAX reader.
+     */
+    public static final int STREAMING_THRESHOLD = 8192;
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final Queue<DocumentBuilder> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private static final ErrorHandler ERROR_HANDLER = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) throws SAXException {
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+    };
+
+    private XmlDocumentParser() {
+    }
+
+    /**
+     * Parse the XML string.
+     *
+     * @param xmlString the XML string
+     * @return the parsed document
+     * @throws IOException if the string is not well formed
+     */
+    public static Document parse(String xmlString) throws IOException {
+        if (xmlString.length() <= STREAMING_THRESHOLD && !xmlString.contains("<!DOCTYPE")) {
+            try {
+                return stream(xmlString);
+            } catch (XMLStreamException e) {
+                // not namespace well formed, left to the DOM parser
+            }
+        }
+
+        DocumentBuilder builder = acquire();
+        try {
+            return builder.parse(new InputSource(new StringReader(xmlString)));
+        } catch (SAXException e) {
+            throw new IOException(e);
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * @return new empty document
+     * @throws IOException if the document builder can not be created
+     */
+    public static Document newDocument() throws IOException {
+        DocumentBuilder builder = acquire();
+        try {
+            return builder.newDocument();
+        } finally {
+            release(builder);
+        }
+    }
+
+    private static Document stream(String xmlString) throws IOException, XMLStreamException {
+        Document document = newDocument();
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(new StringReader(xmlString));
+            Node current = document;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        Element element = document.createElement(qname(reader.getPrefix(), reader.getLocalName()));
+                        for (int i = 0, n = reader.getNamespaceCount(); i < n; i++) {
+                            String prefix = reader.getNamespacePrefix(i);
+                            String uri = reader.getNamespaceURI(i);
+                            element.setAttribute(qname(prefix, null), uri != null ? uri : "");
+                        }
+                        for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+                            element.setAttribute(
+                                    qname(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                                    reader.getAttributeValue(i));
+                        }
+                        current.appendChild(element);
+                        current = element;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        current = current.getParentNode();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        if (current != document) {
+                            appendText(document, current, reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        current.appendChild(document.createCDATASection(reader.getText()));
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        current.appendChild(document.createComment(reader.getText()));
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        current.appendChild(document.createProcessingInstruction(
+                                reader.getPITarget(), reader.getPIData()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                }
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Append the text to the last text child, the reader may report one text
+     * in several events.
+     */
+    private static void appendText(Document document, Node parent, String text) {
+        Node last = parent.getLastChild();
+        if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+            ((Text) last).appendData(text);
+        } else {
+            parent.appendChild(document.createTextNode(text));
+        }
+    }
+
+    private static String qname(String prefix, String localName) {
+        if (localName == null) {
+            return prefix == null || prefix.isEmpty()
+                    ? XMLConstants.XMLNS_ATTRIBUTE
+                    : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+        }
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static DocumentBuilder acquire() throws IOException {
+        DocumentBuilder builder = POOL.poll();
+        if (builder != null) {
+            POOLED.decrementAndGet();
+        } else {
+            try {
+                synchronized (DOCUMENT_BUILDER_FACTORY) {
+                    builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+                }
+            } catch (ParserConfigurationException e) {
+                throw new IOException(e);
+            }
+        }
+        builder.setErrorHandler(ERROR_HANDLER);
+        return builder;
+    }
+
+    private static void release(DocumentBuilder builder) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            builder.reset();
+            POOL.offer(builder);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setXIncludeAware(false);
+        setFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+        setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+        setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        return factory;
+    }
+
+    private static void setFeature(DocumentBuilderFactory factory, String name, boolean value) {
+        try {
+            factory.setFeature(name, value);
+        } catch (ParserConfigurationException e) {
+            // not supported by the parser implementation
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        if (factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, true);
+        }
+        return factory;
+    }
+
+}
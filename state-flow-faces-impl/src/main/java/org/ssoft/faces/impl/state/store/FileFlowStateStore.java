@@ -0,0 +1,294 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.faces.state.store.FlowStateStore;
+import org.ssoft.faces.impl.state.log.FlowLogger;
+
+/**
+ * Flow states kept in an append-only local file.
+ * <p>
+ * Each write appends a record <code>[key length][key][write time][state
+ * length][state]</code>, a removal appends a record with the state length
+ * <code>-1</code>. Only the index of the last record of each flow is held in
+ * the heap, it is rebuilt by scanning the file when the store is opened. The
+ * flows written within the maximum age survive an application restart, the
+ * older ones belong to sessions that are gone and are dropped. The file is
+ * compacted when it holds more overwritten records than live ones.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public class FileFlowStateStore extends FlowStateStore {
+
+    private static final Logger LOGGER = FlowLogger.APPLICATION.getLogger();
+
+    private static final int MAX_KEY_LENGTH = 1024;
+
+    private static final long COMPACT_THRESHOLD = 1024 * 1024;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private final Path file;
+
+    private final long maxAge;
+
+    private final Map<String, Record> index = new HashMap<>();
+
+    private FileChannel channel;
+
+    private long live;
+
+    private long garbage;
+
+    /**
+     *
+     * @param file the store file, created if it does not exist
+     * @param maxAge the age in milliseconds after which a stored flow is
+     * dropped when the store is opened, if not positive the file is cleared
+     * when it is opened
+     * @throws IOException if the file can not be opened
+     */
+    public FileFlowStateStore(Path file, long maxAge) throws IOException {
+        this.file = file;
+        this.maxAge = maxAge;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        open();
+    }
+
+    @Override
+    public synchronized byte[] load(String key) throws IOException {
+        ensureOpen();
+        Record record = index.get(key);
+        if (record == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(record.length);
+        readFully(buffer, record.offset);
+        return buffer.array();
+    }
+
+    @Override
+    public synchronized void store(String key, byte[] state) throws IOException {
+        ensureOpen();
+        Record record = append(key, state);
+        release(index.put(key, record));
+        live += record.size();
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        ensureOpen();
+        Record record = index.remove(key);
+        if (record != null) {
+            release(record);
+            garbage += append(key, null).size();
+            compactIfNeeded();
+        }
+    }
+
+    @Override
+    public synchronized void release() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        index.clear();
+    }
+
+    /**
+     * @return the number of the stored flows
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private void release(Record record) {
+        if (record != null) {
+            live -= record.size();
+            garbage += record.size();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException(String.format("Flow state store %s is closed.", file));
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        live = 0;
+        garbage = 0;
+
+        if (maxAge <= 0) {
+            // the flows of the previous run are not reachable from any session
+            channel.truncate(0);
+            return;
+        }
+
+        long size = channel.size();
+        long position = 0;
+        long limit = System.currentTimeMillis() - maxAge;
+        ByteBuffer header = ByteBuffer.allocate(12);
+        while (position + HEADER_LENGTH <= size) {
+            header.clear().limit(4);
+            readFully(header, position);
+            int keyLength = header.getInt(0);
+            if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH || position + HEADER_LENGTH + keyLength > size) {
+                break;
+            }
+            ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+            readFully(keyBuffer, position + 4);
+            header.clear();
+            readFully(header, position + 4 + keyLength);
+            long time = header.getLong(0);
+            int length = header.getInt(8);
+            long offset = position + HEADER_LENGTH + keyLength;
+            if (length > 0 && offset + length > size) {
+                break;
+            }
+
+            String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+            Record record = new Record(keyLength, offset, length);
+            if (length < 0 || time < limit) {
+                release(index.remove(key));
+                garbage += record.size();
+            } else {
+                release(index.put(key, record));
+                live += record.size();
+            }
+            position = offset + Math.max(length, 0);
+        }
+
+        if (position < size) {
+            LOGGER.log(Level.WARNING, "Flow state store {0} truncated at {1} of {2} bytes.",
+                    new Object[]{file, position, size});
+            channel.truncate(position);
+        }
+        if (garbage > 0) {
+            compact();
+        }
+    }
+
+    private Record append(String key, byte[] state) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length == 0 || keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IOException(String.format("Invalid flow state key \"%s\".", key));
+        }
+        int length = state != null ? state.length : -1;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + keyBytes.length);
+        header.putInt(keyBytes.length).put(keyBytes)
+                .putLong(System.currentTimeMillis()).putInt(length).flip();
+        ByteBuffer body = ByteBuffer.wrap(state != null ? state : new byte[0]);
+
+        long position = channel.size();
+        long offset = position + header.remaining();
+        channel.position(position);
+        while (header.hasRemaining() || body.hasRemaining()) {
+            channel.write(new ByteBuffer[]{header, body});
+        }
+        return new Record(keyBytes.length, offset, length);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException(String.format("Flow state store %s is corrupted.", file));
+            }
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (garbage < COMPACT_THRESHOLD || garbage < live) {
+            return;
+        }
+        compact();
+    }
+
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Record> compacted = new HashMap<>(index.size() * 2);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, Record> entry : index.entrySet()) {
+                Record record = entry.getValue();
+                long start = record.offset - HEADER_LENGTH - record.keyLength;
+                long size = record.size();
+                long copied = 0;
+                while (copied < size) {
+                    copied += channel.transferTo(start + copied, size - copied, out);
+                }
+                compacted.put(entry.getKey(), new Record(record.keyLength,
+                        position + HEADER_LENGTH + record.keyLength, record.length));
+                position += size;
+            }
+            out.force(false);
+        }
+
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Flow state store {0} compacted, {1} bytes released.",
+                    new Object[]{file, garbage});
+        }
+        index.clear();
+        index.putAll(compacted);
+        garbage = 0;
+    }
+
+    private static final class Record {
+
+        private final int keyLength;
+        private final long offset;
+        private final int length;
+
+        private Record(int keyLength, long offset, int length) {
+            this.keyLength = keyLength;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private long size() {
+            return (long) HEADER_LENGTH + keyLength + Math.max(length, 0);
+        }
+
+    }
+
+}
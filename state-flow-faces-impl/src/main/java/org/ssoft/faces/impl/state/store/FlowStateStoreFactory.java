@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import javax.faces.FacesException;
+import javax.faces.context.FacesContext;
+import javax.faces.state.store.FlowStateStore;
+import javax.faces.state.scxml.io.StateHolderSaver;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_STORE_FILE_MAX_AGE_PARAM_NAME;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_STORE_FILE_PARAM_NAME;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_STORE_PARAM_NAME;
+import static org.ssoft.faces.impl.state.StateFlowImplConstants.STATE_FLOW_STORE_SIZE_PARAM_NAME;
+import org.ssoft.faces.impl.state.config.StateWebConfiguration;
+
+/**
+ * Creates the flow state store configured by the application init
+ * parameters.
+ *
+ * @author Waldemar Kłaczyński
+ */
+public final class FlowStateStoreFactory {
+
+    /**
+     *
+     */
+    public static final String SESSION_STORE = "session";
+
+    /**
+     *
+     */
+    public static final String HEAP_STORE = "heap";
+
+    /**
+     *
+     */
+    public static final String FILE_STORE = "file";
+
+    /**
+     *
+     */
+    public static final String REMOTE_STORE = "remote";
+
+    private static final int DEFAULT_HEAP_SIZE = 10000;
+
+    private static final String DEFAULT_FILE_NAME = "state-flow-store.dat";
+
+    private FlowStateStoreFactory() {
+    }
+
+    /**
+     * @param context the faces context
+     * @return the configured store or <code>null</code> if the flows are kept
+     * in the http session
+     * @throws FacesException if the store can not be created
+     */
+    public static FlowStateStore create(FacesContext context) {
+        StateWebConfiguration wcfg = StateWebConfiguration.getInstance();
+        String type = wcfg.getOptionValue(STATE_FLOW_STORE_PARAM_NAME, SESSION_STORE).trim();
+
+        switch (type) {
+            case SESSION_STORE:
+                return null;
+            case HEAP_STORE:
+                return new HeapFlowStateStore(getHeapSize(wcfg));
+            case FILE_STORE:
+                Path file = getFile(context, wcfg);
+                try {
+                    return new FileFlowStateStore(file, getFileMaxAge(wcfg));
+                } catch (IOException ex) {
+                    throw new FacesException(String.format(
+                            "Flow state store %s can not be opened.", file), ex);
+                }
+            case REMOTE_STORE:
+                return RemoteFlowStateStore.create();
+            default:
+                try {
+                    Class<?> storeClass = StateHolderSaver.loadClass(type, context);
+                    return (FlowStateStore) storeClass.getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException ex) {
+                    throw new FacesException(String.format(
+                            "Invalid flow state store \"%s\".", type), ex);
+                }
+        }
+    }
+
+    private static int getHeapSize(StateWebConfiguration wcfg) {
+        String value = wcfg.getOptionValue(STATE_FLOW_STORE_SIZE_PARAM_NAME);
+        if (value == null) {
+            return DEFAULT_HEAP_SIZE;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new FacesException(String.format(
+                    "Invalid flow state store size \"%s\".", value), ex);
+        }
+    }
+
+    private static long getFileMaxAge(StateWebConfiguration wcfg) {
+        String value = wcfg.getOptionValue(STATE_FLOW_STORE_FILE_MAX_AGE_PARAM_NAME);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException ex) {
+            throw new FacesException(String.format(
+                    "Invalid flow state store max age \"%s\".", value), ex);
+        }
+    }
+
+    private static Path getFile(FacesContext context, StateWebConfiguration wcfg) {
+        String value = wcfg.getOptionValue(STATE_FLOW_STORE_FILE_PARAM_NAME);
+        if (value != null) {
+            return Paths.get(value.trim());
+        }
+        Object tempdir = context.getExternalContext().getApplicationMap()
+                .get("javax.servlet.context.tempdir");
+        if (tempdir instanceof File) {
+            return ((File) tempdir).toPath().resolve(DEFAULT_FILE_NAME);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_FILE_NAME);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.store;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.faces.state.store.FlowStateStore;
+import org.ssoft.faces.impl.state.log.FlowLogger;
+
+/**
+ * Flow states kept encoded in the heap, the least recently used flow is
+ * dropped when the store is full.
+ *
+ * @author Waldemar Kłaczyński
+ */
+public class HeapFlowStateStore extends FlowStateStore {
+
+    private static final Logger LOGGER = FlowLogger.APPLICATION.getLogger();
+
+    private final int maxEntries;
+
+    private final Map<String, byte[]> entries;
+
+    /**
+     *
+     * @param maxEntries the maximum number of the stored flows
+     */
+    public HeapFlowStateStore(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The store size must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                if (size() > HeapFlowStateStore.this.maxEntries) {
+                    // the flow is still referenced by its session, it is lost
+                    LOGGER.log(Level.WARNING, "Flow state {0} evicted from the full heap store.", eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public synchronized byte[] load(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void store(String key, byte[] state) {
+        entries.put(key, state);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized void release() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of the stored flows
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+}
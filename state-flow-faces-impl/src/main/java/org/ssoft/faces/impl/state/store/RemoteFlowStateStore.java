@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Waldemar Kłaczyński.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ssoft.faces.impl.state.store;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import javax.faces.FacesException;
+import javax.faces.state.store.FlowStateStore;
+import javax.faces.state.store.FlowStateStoreConnector;
+
+/**
+ * Flow states kept in a remote key value store.
+ * <p>
+ * The transport to the remote store is a {@link FlowStateStoreConnector}
+ * registered with the {@link ServiceLoader}.</p>
+ *
+ * @author Waldemar Kłaczyński
+ */
+public class RemoteFlowStateStore extends FlowStateStore {
+
+    private final FlowStateStoreConnector connector;
+
+    /**
+     *
+     * @param connector the transport to the remote store
+     */
+    public RemoteFlowStateStore(FlowStateStoreConnector connector) {
+        if (connector == null) {
+            throw new NullPointerException();
+        }
+        this.connector = connector;
+    }
+
+    /**
+     * Create store with the first {@link FlowStateStoreConnector} registered
+     * with the {@link ServiceLoader}.
+     *
+     * @return the remote store
+     * @throws FacesException if no connector is registered
+     */
+    public static RemoteFlowStateStore create() {
+        ServiceLoader<FlowStateStoreConnector> loader = ServiceLoader.load(FlowStateStoreConnector.class);
+        Iterator<FlowStateStoreConnector> iterator = loader.iterator();
+        if (!iterator.hasNext()) {
+            throw new FacesException(String.format(
+                    "Remote flow state store requires a registered %s.", FlowStateStoreConnector.class.getName()));
+        }
+        return new RemoteFlowStateStore(iterator.next());
+    }
+
+    /**
+     * @return the transport to the remote store
+     */
+    public FlowStateStoreConnector getConnector() {
+        return connector;
+    }
+
+    @Override
+    public byte[] load(String key) throws IOException {
+        return connector.get(key);
+    }
+
+    @Override
+    public void store(String key, byte[] state) throws IOException {
+        connector.put(key, state);
+    }
+
+    @Override
+    public void remove(String key) throws IOException {
+        connector.delete(key);
+    }
+
+    @Override
+    public void release() throws IOException {
+        connector.close();
+    }
+
+}
@@ -797,11 +797,24 @@ public abstract class AbstractFlowTagHandler<T extends Object> extends TagHandle
      * @throws IOException
      */
     public ParsedValue getParsedResorceValue(FaceletContext ctx, UIComponent parent, String url) throws IOException {
+        return getParsedResorceValue(ctx, parent, url, null);
+    }
+
+    /**
+     *
+     * @param ctx
+     * @param parent
+     * @param url
+     * @param type the declared content type, may be null
+     * @return
+     * @throws IOException
+     */
+    public ParsedValue getParsedResorceValue(FaceletContext ctx, UIComponent parent, String url, String type) throws IOException {
         ParsedValue result = null;
         try {
             FacesContext fc = ctx.getFacesContext();
             URL resource = fc.getExternalContext().getResource(url);
-            result = ContentParser.parseResource(resource);
+            result = ContentParser.parseResource(resource, type);
         } catch (IOException e) {
             throw new TagException(this.tag,
                     String.format("can not build data %s.", Util.getErrorMessage(e)));
@@ -817,6 +830,18 @@ public abstract class AbstractFlowTagHandler<T extends Object> extends TagHandle
      * @throws IOException
      */
     public ParsedValue getParsedBodyValue(FaceletContext ctx, UIComponent parent) throws IOException {
+        return getParsedBodyValue(ctx, parent, null);
+    }
+
+    /**
+     *
+     * @param ctx
+     * @param parent
+     * @param type the declared content type, may be null
+     * @return
+     * @throws IOException
+     */
+    public ParsedValue getParsedBodyValue(FaceletContext ctx, UIComponent parent, String type) throws IOException {
         ParsedValue result = null;
         UIPanel panel = new UIPanel();
         try {
@@ -858,7 +883,7 @@ public abstract class AbstractFlowTagHandler<T extends Object> extends TagHandle
             }
 
             if (body != null) {
-                result = ContentParser.parseContent(body);
+                result = ContentParser.parseContent(body, type);
             }
         } catch (IOException e) {
             throw new TagException(this.tag,
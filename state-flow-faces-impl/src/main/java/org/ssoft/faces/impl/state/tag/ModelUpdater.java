@@ -18,6 +18,7 @@ package org.ssoft.faces.impl.state.tag;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +40,7 @@ import javax.faces.state.scxml.model.SCXML;
 import javax.faces.state.scxml.model.SimpleTransition;
 import javax.faces.state.scxml.model.State;
 import javax.faces.state.scxml.model.Transition;
+import javax.faces.state.scxml.model.TransitionIndex;
 import javax.faces.state.scxml.model.TransitionTarget;
 import javax.faces.state.scxml.model.TransitionalState;
 
@@ -171,6 +173,10 @@ public final class ModelUpdater {
         Map<String, TransitionTarget> targets = scxml.getTargets();
         updateEnterableStates(scxml.getChildren(), targets);
 
+        Set<String> eventDescriptors = new HashSet<>();
+        collectEventDescriptors(scxml.getChildren(), eventDescriptors);
+        scxml.setEventDescriptors(eventDescriptors);
+
         scxml.getInitialTransition().setObservableId(1);
 
         Map idmap = (Map) scxml.getMetadata().get(META_ELEMENT_IDMAP);
@@ -203,6 +209,30 @@ public final class ModelUpdater {
         return nextOrder;
     }
 
+    /**
+     * Collect the event descriptors of the transitions of all states, the all
+     * events descriptor is collected as <code>*</code>.
+     *
+     * @param states The list of children states of a parent TransitionalState
+     * or the SCXML document itself
+     * @param eventDescriptors The set to collect event descriptors to
+     */
+    private void collectEventDescriptors(final List<EnterableState> states, final Set<String> eventDescriptors) {
+        for (EnterableState state : states) {
+            if (state instanceof TransitionalState) {
+                TransitionalState ts = (TransitionalState) state;
+                TransitionIndex index = ts.getTransitionIndex();
+                if (index != null) {
+                    if (index.hasAllEventsTransitions()) {
+                        eventDescriptors.add("*");
+                    }
+                    eventDescriptors.addAll(index.getDescriptors());
+                }
+                collectEventDescriptors(ts.getChildren(), eventDescriptors);
+            }
+        }
+    }
+
     /**
      * Initialize all {@link org.apache.commons.scxml2.model.Observable}
      * instances in the SCXML document by iterating them in document order and
@@ -442,6 +472,7 @@ public final class ModelUpdater {
         for (Transition transition : state.getTransitionsList()) {
             updateTransition(transition, targets);
         }
+        state.setTransitionIndex(new TransitionIndex(state.getTransitionsList()));
 
         for (Invoke inv : state.getInvokes()) {
             if (inv.getSrc() != null && inv.getSrcexpr() != null) {
@@ -465,6 +496,7 @@ public final class ModelUpdater {
         for (Transition transition : parallel.getTransitionsList()) {
             updateTransition(transition, targets);
         }
+        parallel.setTransitionIndex(new TransitionIndex(parallel.getTransitionsList()));
         List<History> histories = parallel.getHistory();
         for (History history : histories) {
             updateHistory(history, targets, parallel);
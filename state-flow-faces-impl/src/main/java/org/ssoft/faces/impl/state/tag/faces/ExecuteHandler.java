@@ -22,6 +22,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Logger;
@@ -70,6 +71,7 @@ import javax.faces.view.facelets.Tag;
 import org.ssoft.faces.impl.state.el.ExecuteExpressionFactory;
 import org.ssoft.faces.impl.state.log.FlowLogger;
 import static org.ssoft.faces.impl.state.utils.Util.findStateMachine;
+import static org.ssoft.faces.impl.state.utils.Util.getControllerExecutorIds;
 import static javax.faces.state.StateFlow.FACES_VIEW_ROOT_EXECUTOR_ID;
 import javax.faces.state.events.PostInitExecutorEvent;
 
@@ -189,6 +191,12 @@ public class ExecuteHandler extends ComponentHandler {
 //        }
 
         component.setExecutorId(executorId);
+
+        List<String> executorIds = getControllerExecutorIds(viewRoot, true);
+        if (!executorIds.contains(executorId)) {
+            executorIds.add(executorId);
+        }
+
         if (ccattrs != null) {
             ccattrs.put(StateFlow.EXECUTOR_CONTROLLER_LOCATION_KEY, tag.getLocation());
             ExecutorController controller = (ExecutorController) ccattrs
@@ -41,6 +41,11 @@ public class ContentTagHandler extends AbstractFlowTagHandler<Content> {
      */
     protected final TagAttribute expr;
 
+    /**
+     *
+     */
+    protected final TagAttribute type;
+
     private ParsedValue staticValue;
     private boolean resolved;
 
@@ -56,6 +61,7 @@ public class ContentTagHandler extends AbstractFlowTagHandler<Content> {
         in("invoke", Invoke.class);
 
         this.expr = this.getAttribute("expr");
+        this.type = this.getAttribute("type");
     }
 
     /**
@@ -79,7 +85,7 @@ public class ContentTagHandler extends AbstractFlowTagHandler<Content> {
         if (expr != null) {
             data.setExpr(expr.getValueExpression(ctx, Object.class));
         } else if (!resolved || !isProductionMode(ctx)) {
-            staticValue = getParsedBodyValue(ctx, parent);
+            staticValue = getParsedBodyValue(ctx, parent, getContentType(ctx));
             data.setParsedValue(staticValue);
         }
         resolved = true;
@@ -88,4 +94,8 @@ public class ContentTagHandler extends AbstractFlowTagHandler<Content> {
 
     }
 
+    private String getContentType(FaceletContext ctx) {
+        return type != null ? type.getValue(ctx) : null;
+    }
+
 }
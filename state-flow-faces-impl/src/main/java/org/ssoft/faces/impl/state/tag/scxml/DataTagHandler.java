@@ -49,6 +49,11 @@ public class DataTagHandler extends AbstractFlowTagHandler<Data> {
      */
     protected final TagAttribute expr;
 
+    /**
+     *
+     */
+    protected final TagAttribute type;
+
     private ParsedValue staticValue;
     private boolean resolved;
 
@@ -64,6 +69,7 @@ public class DataTagHandler extends AbstractFlowTagHandler<Data> {
         this.id = this.getRequiredAttribute("id");
         this.src = this.getAttribute("src");
         this.expr = this.getAttribute("expr");
+        this.type = this.getAttribute("type");
     }
 
     /**
@@ -94,10 +100,10 @@ public class DataTagHandler extends AbstractFlowTagHandler<Data> {
             if (pr != null) {
                 resolvedSrc = pr.resolvePath(resolvedSrc);
             }
-            staticValue = getParsedResorceValue(ctx, parent, resolvedSrc);
+            staticValue = getParsedResorceValue(ctx, parent, resolvedSrc, getContentType(ctx));
             data.setParsedValue(staticValue);
         } else if (!resolved || !isProductionMode(ctx)) {
-            staticValue = getParsedBodyValue(ctx, parent);
+            staticValue = getParsedBodyValue(ctx, parent, getContentType(ctx));
             data.setParsedValue(staticValue);
         }
         resolved = true;
@@ -107,4 +113,8 @@ public class DataTagHandler extends AbstractFlowTagHandler<Data> {
 
     }
 
+    private String getContentType(FaceletContext ctx) {
+        return type != null ? type.getValue(ctx) : null;
+    }
+
 }
@@ -19,7 +19,9 @@ import com.sun.faces.el.ELContextImpl;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +47,7 @@ import javax.faces.view.facelets.TagHandler;
 import javax.faces.state.scxml.model.SCXML;
 import org.ssoft.faces.impl.state.StateFlowURLResolver;
 import org.ssoft.faces.impl.state.el.VariableMapperWrapper;
+import org.ssoft.faces.impl.state.evaluator.ExpressionCache;
 import org.ssoft.faces.impl.state.log.FlowLogger;
 import static org.ssoft.faces.impl.state.tag.AbstractFlowTagHandler.CURRENT_FLOW_OBJECT;
 import static org.ssoft.faces.impl.state.tag.AbstractFlowTagHandler.TAG_MAP;
@@ -91,6 +94,11 @@ public class StateChartTagHandler extends TagHandler {
      */
     protected final TagAttribute initial;
 
+    /**
+     *
+     */
+    protected final TagAttribute coalesce;
+
     private static SCXML restored;
 
     /**
@@ -101,6 +109,7 @@ public class StateChartTagHandler extends TagHandler {
         super(config);
         this.id = this.getAttribute("id");
         this.initial = this.getRequiredAttribute("initial");
+        this.coalesce = this.getAttribute("coalesce");
     }
 
     @Override
@@ -161,6 +170,12 @@ public class StateChartTagHandler extends TagHandler {
         if (initial != null) {
             chart.setInitial(initial.getValue(ctx));
         }
+        if (coalesce != null) {
+            String descriptors = coalesce.getValue(ctx);
+            if (descriptors != null && !descriptors.trim().isEmpty()) {
+                chart.setCoalescedEvents(new HashSet<>(Arrays.asList(descriptors.trim().split("\\s+"))));
+            }
+        }
         chart.setDatamodelName(tag.getNamespace());
 
         String viewId = root.getViewId();
@@ -210,6 +225,11 @@ public class StateChartTagHandler extends TagHandler {
 
         String path = getPath(ctx, root, parent);
 
+        URL source = getSource(ctx);
+        if (source != null) {
+            chart.getMetadata().put("faces-source-url", source);
+        }
+
         PathResolver resolver = baseResolver.getResolver(path);
         chart.setPathResolver(resolver);
 
@@ -248,6 +268,7 @@ public class StateChartTagHandler extends TagHandler {
 
         ModelUpdater updater = new ModelUpdater(tags);
         updater.updateSCXML(chart);
+        ExpressionCache.attach(chart);
 
         restored = chart;
 
@@ -256,6 +277,24 @@ public class StateChartTagHandler extends TagHandler {
     public String getPath(FaceletContext ctx, UIViewRoot root, UIComponent parent) {
         String path = root.getViewId();
 
+        URL url = getSource(ctx);
+        if (url != null) {
+            path = "/" + url.getPath();
+        }
+
+        return path;
+    }
+
+    /**
+     * Resolve the source URL of the facelet this chart tag is declared in.
+     *
+     * @param ctx the facelet context
+     * @return the facelet source URL or <code>null</code> if it can not be
+     * resolved
+     */
+    public URL getSource(FaceletContext ctx) {
+        URL url = null;
+
         try {
             Field ffield = ctx.getClass().getDeclaredField("facelet");
             boolean faccessible = ffield.isAccessible();
@@ -266,8 +305,7 @@ public class StateChartTagHandler extends TagHandler {
                 boolean saccessible = sfield.isAccessible();
                 try {
                     sfield.setAccessible(true);
-                    URL url = (URL) sfield.get(facelet);
-                    path = "/" + url.getPath();
+                    url = (URL) sfield.get(facelet);
                 } finally {
                     sfield.setAccessible(saccessible);
                 }
@@ -279,7 +317,7 @@ public class StateChartTagHandler extends TagHandler {
         } catch (Throwable ex) {
         }
 
-        return path;
+        return url;
     }
 
     private void pushMapper(FacesContext ctx, FunctionMapper mapper) {
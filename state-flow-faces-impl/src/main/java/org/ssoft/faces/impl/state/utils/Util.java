@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -35,9 +36,14 @@ import java.util.regex.Pattern;
 import javax.faces.FacesException;
 import javax.faces.application.StateManager;
 import javax.faces.component.UIComponent;
+import javax.faces.component.UINamingContainer;
 import javax.faces.component.UIParameter;
+import javax.faces.component.UIViewRoot;
 import javax.faces.context.FacesContext;
+import static javax.faces.state.StateFlow.CONTROLLER_EXECUTORS_HINT;
 import javax.faces.state.StateFlowHandler;
+import javax.faces.state.component.UIStateChartExecutor;
+import javax.faces.state.scxml.SCXMLExecutor;
 import javax.faces.state.scxml.model.ModelException;
 import javax.faces.state.scxml.model.SCXML;
 import javax.faces.view.facelets.Facelet;
@@ -440,4 +446,78 @@ public class Util {
     }
     
     
+    /**
+     * Return the executor ids of the controllers registered in the view.
+     *
+     * @param viewRoot the view root
+     * @param create if true the empty registry is created when missing
+     * @return the registered executor ids or <code>null</code>
+     */
+    public static List<String> getControllerExecutorIds(UIViewRoot viewRoot, boolean create) {
+        @SuppressWarnings("unchecked")
+        List<String> executorIds = (List<String>) viewRoot.getAttributes().get(CONTROLLER_EXECUTORS_HINT);
+        if (executorIds == null && create) {
+            executorIds = new ArrayList<>();
+            viewRoot.getAttributes().put(CONTROLLER_EXECUTORS_HINT, executorIds);
+        }
+        return executorIds;
+    }
+
+    /**
+     * Call the callback for each controller of the current view having a
+     * root executor. The controllers are found by their registered client
+     * ids, without visiting the component tree, and the callback runs with
+     * the controller and its ancestors pushed to EL as during a tree visit.
+     *
+     * @param fc the faces context
+     * @param callback the callback receiving the controller and its executor
+     */
+    public static void visitControllers(FacesContext fc, BiConsumer<UIStateChartExecutor, SCXMLExecutor> callback) {
+        UIViewRoot viewRoot = fc.getViewRoot();
+        if (viewRoot == null) {
+            return;
+        }
+        StateFlowHandler handler = StateFlowHandler.getInstance();
+        List<String> clientIds = handler.getControllerClientIds(fc);
+        if (clientIds == null || clientIds.isEmpty()) {
+            return;
+        }
+
+        String separator = String.valueOf(UINamingContainer.getSeparatorChar(fc));
+        for (String clientId : new ArrayList<>(clientIds)) {
+            UIComponent target;
+            try {
+                target = viewRoot.findComponent(separator + clientId);
+            } catch (IllegalArgumentException ex) {
+                target = null;
+            }
+            if (!(target instanceof UIStateChartExecutor)) {
+                continue;
+            }
+
+            UIStateChartExecutor controller = (UIStateChartExecutor) target;
+            String executorId = controller.getExecutorId();
+            SCXMLExecutor executor = executorId != null
+                    ? handler.getRootExecutor(fc, executorId) : null;
+            if (executor == null) {
+                continue;
+            }
+
+            List<UIComponent> path = new ArrayList<>();
+            for (UIComponent c = target; c != null; c = c.getParent()) {
+                path.add(c);
+            }
+            for (int i = path.size() - 1; i >= 0; i--) {
+                path.get(i).pushComponentToEL(fc, null);
+            }
+            try {
+                callback.accept(controller, executor);
+            } finally {
+                for (UIComponent c : path) {
+                    c.popComponentFromEL(fc);
+                }
+            }
+        }
+    }
+
 }
@@ -15,7 +15,6 @@
  */
 package org.ssoft.faces.prime;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import javax.faces.component.UIComponent;
@@ -43,23 +42,16 @@ public class TimerEventProducerImpl extends TimerEventProducer implements AjaxSo
     @Override
     public void encodeBegin(List<DelayedEventTask> taskList) {
         FacesContext context = FacesContext.getCurrentInstance();
-        if (!taskList.isEmpty()) {
-            Map<Object, Object> attrs = context.getAttributes();
-            DelayedEventTask curTask = (DelayedEventTask) attrs.get(STATE_FLOW_DISPATCH_TASK);
-            taskList = new ArrayList<>(taskList);
-
-            DelayedEventTask newTask = taskList.stream()
-                    .sorted((o1, o2) -> {
-                        return (int) (o1.getTime() - o2.getTime());
-                    })
-                    .findFirst().get();
-
-            if (curTask == null) {
-                curTask = newTask;
-            } else if (curTask.getTime() > newTask.getTime()) {
-                curTask = newTask;
+        Map<Object, Object> attrs = context.getAttributes();
+        DelayedEventTask curTask = (DelayedEventTask) attrs.get(STATE_FLOW_DISPATCH_TASK);
+        DelayedEventTask newTask = curTask;
+        for (DelayedEventTask task : taskList) {
+            if (newTask == null || task.getTime() < newTask.getTime()) {
+                newTask = task;
             }
-            attrs.put(STATE_FLOW_DISPATCH_TASK, curTask);
+        }
+        if (newTask != curTask) {
+            attrs.put(STATE_FLOW_DISPATCH_TASK, newTask);
         }
     }
 